@@ -0,0 +1,94 @@
+package textprocessor.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Random;
+
+/**
+ * Generated input files for the benchmarks.
+ *
+ * A corpus looks like a fixed-width export: numbered records of padded
+ * words and numbers, separated by spaces and tabs, with a mix of upper
+ * and lower case and about one line in ten containing {@link #KEYWORD}.
+ * The same size always gives the same file, which is written once to
+ * the temporary directory and reused by later runs and forks.
+ */
+final class Corpus {
+    /** The -k and -r substring, which a tenth of the lines contain. */
+    static final String KEYWORD = "lorem";
+
+    private static final String[] WORDS = {
+            "alpha", "Bravo", "CHARLIE", "delta", "Echo", "foxtrot", "GOLF", "hotel", "India", "juliett"
+    };
+
+    private final Path file;
+    private final long bytes;
+    private final long lines;
+
+    private Corpus(Path file, long bytes, long lines) {
+        this.file = file;
+        this.bytes = bytes;
+        this.lines = lines;
+    }
+
+    Path file() {
+        return file;
+    }
+
+    long bytes() {
+        return bytes;
+    }
+
+    long lines() {
+        return lines;
+    }
+
+    /**
+     * Returns the corpus of about the given size, generating it if needed.
+     */
+    static Corpus of(int megabytes) throws IOException {
+        Path file = Path.of(System.getProperty("java.io.tmpdir"), "textprocessor-corpus-" + megabytes + "MB.txt");
+        if (!Files.exists(file)) {
+            generate(file, megabytes * 1024L * 1024L);
+        }
+
+        long lines = 0;
+        try (var reader = Files.newBufferedReader(file, Charset.defaultCharset())) {
+            while (reader.readLine() != null) {
+                lines++;
+            }
+        }
+        return new Corpus(file, Files.size(file), lines);
+    }
+
+    private static void generate(Path file, long size) throws IOException {
+        // written under another name first, so an interrupted run leaves no partial corpus
+        Path partial = Files.createTempFile(file.getParent(), "textprocessor-corpus", ".partial");
+        Random random = new Random(size);
+        StringBuilder line = new StringBuilder(128);
+
+        try (BufferedWriter writer = Files.newBufferedWriter(partial, Charset.defaultCharset())) {
+            long written = 0;
+            for (long record = 1; written < size; record++) {
+                line.setLength(0);
+                line.append(String.format("%010d", record)).append('\t');
+                int words = 4 + random.nextInt(8);
+                for (int i = 0; i < words; i++) {
+                    String word = random.nextInt(80) == 0 ? KEYWORD : WORDS[random.nextInt(WORDS.length)];
+                    line.append(String.format("%-8s", word));
+                    line.append(random.nextBoolean() ? ' ' : '\t');
+                }
+                line.append(random.nextInt(1_000_000));
+                line.append(System.lineSeparator());
+
+                writer.append(line);
+                written += line.length();
+            }
+        }
+        Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+}
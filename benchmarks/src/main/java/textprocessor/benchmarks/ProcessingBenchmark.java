@@ -0,0 +1,123 @@
+package textprocessor.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import textprocessor.Main;
+import textprocessor.TextProcessor;
+import textprocessor.TextProcessorException;
+
+/**
+ * Measures a whole run over a generated {@link Corpus}, through the
+ * library ({@link TextProcessor#textprocessor()}) and through the command
+ * line ({@link Main#main}), for each flag and some common combinations.
+ *
+ * Besides runs per second, the {@link Throughput} counters report the
+ * input processed in megabytes and lines per second. Add "-prof gc" for
+ * the allocation rate. Sizes are in megabytes; larger corpora can be
+ * chosen on the command line, for example "-p size=1,64,1024,4096".
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@State(Scope.Benchmark)
+public class ProcessingBenchmark {
+    @Param({"1", "64"})
+    public int size;
+
+    @Param({"", "-k", "-i -k", "-r", "-n", "-w", "-s", "-k -s", "-i -k -n", "-r -w -s", "-n -s"})
+    public String flags;
+
+    private Corpus corpus;
+    private Path outputFile;
+
+    /**
+     * The input processed per second, next to the number of runs.
+     */
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Throughput {
+        public double megabytes;
+        public long lines;
+    }
+
+    @Setup(Level.Trial)
+    public void createCorpus() throws IOException {
+        corpus = Corpus.of(size);
+        outputFile = corpus.file().resolveSibling("textprocessor-benchmark-output.txt");
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteOutput() throws IOException {
+        // an existing output file is never overwritten
+        Files.deleteIfExists(outputFile);
+    }
+
+    @Benchmark
+    public void library(Throughput throughput) throws TextProcessorException {
+        TextProcessor processor = new TextProcessor();
+        processor.setFilepath(corpus.file().toString());
+        processor.setOutputFile(outputFile.toString());
+        for (String flag : flags.split(" ")) {
+            switch (flag) {
+                case "-k" -> processor.setKeepLines(Corpus.KEYWORD);
+                case "-i" -> processor.setCaseInsensitive(true);
+                case "-r" -> processor.setReplaceText(Corpus.KEYWORD, "ipsum");
+                case "-n" -> processor.setAddPaddedLineNumber(6);
+                case "-w" -> processor.setRemoveWhitespace(true);
+                case "-s" -> processor.setSuffixLines("!");
+                default -> { }
+            }
+        }
+        processor.textprocessor();
+        count(throughput);
+    }
+
+    @Benchmark
+    public void commandLine(Throughput throughput) {
+        Main.main(arguments());
+        count(throughput);
+    }
+
+    private String[] arguments() {
+        List<String> arguments = new ArrayList<>();
+        for (String flag : flags.split(" ")) {
+            switch (flag) {
+                case "-k" -> arguments.addAll(List.of("-k", Corpus.KEYWORD));
+                case "-r" -> arguments.addAll(List.of("-r", Corpus.KEYWORD, "ipsum"));
+                case "-n" -> arguments.addAll(List.of("-n", "6"));
+                case "-s" -> arguments.addAll(List.of("-s", "!"));
+                case "-i", "-w" -> arguments.add(flag);
+                default -> { }
+            }
+        }
+        arguments.addAll(List.of("-o", outputFile.toString(), corpus.file().toString()));
+        return arguments.toArray(new String[0]);
+    }
+
+    private void count(Throughput throughput) {
+        throughput.megabytes += corpus.bytes() / (1024.0 * 1024.0);
+        throughput.lines += corpus.lines();
+    }
+}
@@ -0,0 +1,72 @@
+package textprocessor.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import textprocessor.Main;
+import textprocessor.TextProcessor;
+import textprocessor.TextProcessorException;
+
+/**
+ * Measures how the time of a run grows with the input: the same -r and -n
+ * run over corpora ten times apart in size, through the library and the
+ * command line. A run that streams its lines takes about ten times as
+ * long on the larger corpus; a run that is quadratic in the number of
+ * lines, such as one looking each line up to number it, a hundred times.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ScalingBenchmark {
+    @Param({"2", "20"})
+    public int size;
+
+    private Corpus corpus;
+    private Path outputFile;
+
+    @Setup(Level.Trial)
+    public void createCorpus() throws IOException {
+        corpus = Corpus.of(size);
+        outputFile = corpus.file().resolveSibling("textprocessor-scaling-output.txt");
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteOutput() throws IOException {
+        Files.deleteIfExists(outputFile);
+    }
+
+    @Benchmark
+    public void library() throws TextProcessorException {
+        TextProcessor processor = new TextProcessor();
+        processor.setFilepath(corpus.file().toString());
+        processor.setOutputFile(outputFile.toString());
+        processor.setReplaceText(Corpus.KEYWORD, "ipsum");
+        processor.setAddPaddedLineNumber(6);
+        processor.textprocessor();
+    }
+
+    @Benchmark
+    public void commandLine() {
+        Main.main(new String[] {"-r", Corpus.KEYWORD, "ipsum", "-n", "6", "-o", outputFile.toString(),
+                corpus.file().toString()});
+    }
+}
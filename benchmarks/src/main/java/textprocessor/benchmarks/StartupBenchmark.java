@@ -0,0 +1,96 @@
+package textprocessor.benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import textprocessor.Main;
+
+/**
+ * Measures the start of the command line: a new JVM running
+ * {@link Main} over a one line file, from launching it to its exit. Most
+ * of a small run is the JVM starting and loading classes, which the
+ * class data sharing archive of bin/textprocessor saves.
+ *
+ * With archive=cds the runs use an archive recorded by a first run, as
+ * the launcher does; with archive=none they use the JDK's default one
+ * only. The sample mode reports the median next to the mean.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StartupBenchmark {
+    @Param({"none", "cds"})
+    public String archive;
+
+    private Path inputFile;
+    private Path archiveFile;
+    private List<String> command;
+
+    @Setup(Level.Trial)
+    public void createArchive() throws IOException, InterruptedException {
+        inputFile = Files.createTempFile("textprocessor-startup", ".txt");
+        Files.writeString(inputFile, "one line" + System.lineSeparator(), Charset.defaultCharset());
+
+        command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        if (archive.equals("cds")) {
+            archiveFile = inputFile.resolveSibling("textprocessor-startup.jsa");
+            Files.deleteIfExists(archiveFile);
+            launch(List.of("-XX:ArchiveClassesAtExit=" + archiveFile));
+            command.add("-XX:SharedArchiveFile=" + archiveFile);
+        }
+        // a warning about the archive would be printed on the standard output
+        command.addAll(List.of("-Xlog:cds=off", "-Xlog:cds+dynamic=off"));
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() throws IOException {
+        Files.deleteIfExists(inputFile);
+        if (archiveFile != null) {
+            Files.deleteIfExists(archiveFile);
+        }
+    }
+
+    @Benchmark
+    public int commandLine() throws IOException, InterruptedException {
+        return launch(List.of());
+    }
+
+    private int launch(List<String> options) throws IOException, InterruptedException {
+        List<String> arguments = new ArrayList<>(command);
+        arguments.addAll(options);
+        arguments.addAll(List.of("-cp", System.getProperty("java.class.path"), Main.class.getName(),
+                inputFile.toString()));
+        Process process = new ProcessBuilder(arguments)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        int status = process.waitFor();
+        if (status != 0) {
+            throw new IllegalStateException("The command line exited with status " + status);
+        }
+        return status;
+    }
+}
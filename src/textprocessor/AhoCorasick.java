@@ -0,0 +1,146 @@
+package textprocessor;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Tells whether a line contains any of a set of substrings, in a single
+ * pass over the line.
+ *
+ * The substrings are compiled into an Aho-Corasick automaton, stored as
+ * a table of transitions over the characters that occur in them (all
+ * other characters share one column). Each character of a line costs one
+ * table lookup, however many substrings there are.
+ *
+ * When case-insensitive, two characters match if they are equal after
+ * {@link Character#toUpperCase(char)} followed by
+ * {@link Character#toLowerCase(char)}, the same rule as
+ * {@link CaseInsensitiveMatcher}. The folding is built into the table, so
+ * lines are not folded while they are searched.
+ */
+final class AhoCorasick {
+    private static final int ROOT = 0;
+
+    // the folded form of every char, computed once for all case-insensitive automatons
+    private static char[] foldTable;
+
+    private final char[] columns = new char[Character.MAX_VALUE + 1];
+    private final int width;
+    private final int[] transitions;
+    private final boolean[] accepting;
+    private final boolean matchesEverything;
+
+    AhoCorasick(Collection<String> substrings, boolean caseInsensitive) {
+        // give every character of the substrings its own column, 0 is for the others
+        int columnCount = 1;
+        boolean empty = false;
+        for (String substring : substrings) {
+            empty |= substring.isEmpty();
+            for (int i = 0; i < substring.length(); i++) {
+                char character = caseInsensitive ? fold(substring.charAt(i)) : substring.charAt(i);
+                if (columns[character] == 0) {
+                    columns[character] = (char) columnCount++;
+                }
+            }
+        }
+        if (caseInsensitive) {
+            // every character is looked up through its folded form
+            char[] fold = foldTable();
+            char[] folded = new char[Character.MAX_VALUE + 1];
+            for (int character = 0; character <= Character.MAX_VALUE; character++) {
+                folded[character] = columns[fold[character]];
+            }
+            System.arraycopy(folded, 0, columns, 0, folded.length);
+        }
+        this.width = columnCount;
+        this.matchesEverything = empty;
+
+        // build the trie of the substrings
+        int states = 1;
+        int[] table = new int[width * 16];
+        boolean[] terminal = new boolean[16];
+        Arrays.fill(table, -1);
+        for (String substring : substrings) {
+            int state = ROOT;
+            for (int i = 0; i < substring.length(); i++) {
+                int column = columns[substring.charAt(i)];
+                int next = table[state * width + column];
+                if (next < 0) {
+                    if ((states + 1) * width > table.length) {
+                        int oldLength = table.length;
+                        table = Arrays.copyOf(table, oldLength * 2);
+                        Arrays.fill(table, oldLength, table.length, -1);
+                        terminal = Arrays.copyOf(terminal, table.length / width);
+                    }
+                    next = states++;
+                    table[state * width + column] = next;
+                }
+                state = next;
+            }
+            terminal[state] = true;
+        }
+
+        // add the failure transitions breadth first, so every state becomes a full row
+        int[] failure = new int[states];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int column = 0; column < width; column++) {
+            int child = table[ROOT * width + column];
+            if (child < 0) {
+                table[ROOT * width + column] = ROOT;
+            } else {
+                failure[child] = ROOT;
+                queue.add(child);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            terminal[state] |= terminal[failure[state]];
+            for (int column = 0; column < width; column++) {
+                int child = table[state * width + column];
+                int fallback = table[failure[state] * width + column];
+                if (child < 0) {
+                    table[state * width + column] = fallback;
+                } else {
+                    failure[child] = fallback;
+                    queue.add(child);
+                }
+            }
+        }
+
+        this.transitions = Arrays.copyOf(table, states * width);
+        this.accepting = Arrays.copyOf(terminal, states);
+    }
+
+    /**
+     * Returns true if the line contains at least one of the substrings.
+     */
+    boolean matches(String line) {
+        if (matchesEverything) {
+            return true;
+        }
+        int state = ROOT;
+        for (int i = 0; i < line.length(); i++) {
+            state = transitions[state * width + columns[line.charAt(i)]];
+            if (accepting[state]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static char fold(char character) {
+        return Character.toLowerCase(Character.toUpperCase(character));
+    }
+
+    private static synchronized char[] foldTable() {
+        if (foldTable == null) {
+            char[] table = new char[Character.MAX_VALUE + 1];
+            for (int character = 0; character <= Character.MAX_VALUE; character++) {
+                table[character] = fold((char) character);
+            }
+            foldTable = table;
+        }
+        return foldTable;
+    }
+}
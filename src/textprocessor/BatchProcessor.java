@@ -0,0 +1,207 @@
+package textprocessor;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Runs one {@link TextProcessor} configuration over many input files, in
+ * one JVM.
+ *
+ * The inputs are files, directories (every regular file directly in
+ * them) or glob patterns such as "logs/2024-*.log" or "logs/**.log".
+ * Each input file is written to the output file named by the template,
+ * in which {file} stands for the input's file name, {name} for that name
+ * without its extension and {ext} for the extension, without the dot.
+ * Missing output directories are created; as with a single file, an
+ * existing output file is never overwritten.
+ *
+ * The configuration is validated and compiled once. The files are then
+ * processed on a fixed pool of threads, at most {@link #setConcurrency}
+ * of them at a time, which also bounds the number of open files. A file
+ * that fails does not stop the others.
+ */
+public final class BatchProcessor {
+    private static final String GLOB_CHARACTERS = "*?[{";
+
+    private final TextProcessor configuration;
+    private final String outputTemplate;
+    // output directories already created, so each is only created once
+    private final Set<Path> directories = ConcurrentHashMap.newKeySet();
+    private int concurrency = 2 * Runtime.getRuntime().availableProcessors();
+
+    /**
+     * @param configuration The actions to run on every file. Its input and output files are ignored.
+     * @param outputTemplate The name of each output file, see {@link #isTemplate}.
+     */
+    public BatchProcessor(TextProcessor configuration, String outputTemplate) {
+        this.configuration = configuration;
+        this.outputTemplate = outputTemplate;
+    }
+
+    /**
+     * Sets the number of files processed at the same time. The threads of
+     * the configuration, used to split large files, are shared among them.
+     * Defaults to twice the number of available processors, since small
+     * files mostly wait for I/O.
+     *
+     * @param concurrency The number of files, at least 1.
+     */
+    public void setConcurrency(int concurrency) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("concurrency must be at least 1");
+        }
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * Returns true if an output file name contains {file}, {name} or {ext}.
+     */
+    public static boolean isTemplate(String outputFile) {
+        return outputFile.contains("{file}") || outputFile.contains("{name}") || outputFile.contains("{ext}");
+    }
+
+    /**
+     * Processes every input file.
+     *
+     * @param inputs Files, directories and glob patterns.
+     * @return The files that failed, in input order, with the reason. Empty if all succeeded.
+     * @throws TextProcessorException If the configuration is invalid or an input cannot be listed.
+     */
+    public Map<Path, TextProcessorException> process(List<String> inputs) throws TextProcessorException {
+        configuration.compilePlan();
+        List<Path> files = expand(inputs);
+
+        int workers = Math.min(concurrency, Math.max(files.size(), 1));
+        int threadsPerFile = Math.max(1, configuration.threads() / workers);
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        try {
+            List<Future<TextProcessorException>> results = new ArrayList<>(files.size());
+            for (Path file : files) {
+                results.add(pool.submit(() -> processFile(file, threadsPerFile)));
+            }
+
+            Map<Path, TextProcessorException> failures = new LinkedHashMap<>();
+            for (int i = 0; i < files.size(); i++) {
+                TextProcessorException failure = await(results.get(i));
+                if (failure != null) {
+                    failures.put(files.get(i), failure);
+                }
+            }
+            return failures;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private TextProcessorException processFile(Path file, int threads) {
+        Path outputFile = Path.of(outputFor(outputTemplate, file));
+        TextProcessor processor = configuration.copy();
+        processor.setFilepath(file.toString());
+        processor.setOutputFile(outputFile.toString());
+        processor.setThreads(threads);
+        try {
+            Path directory = outputFile.toAbsolutePath().getParent();
+            if (directory != null && directories.add(directory)) {
+                Files.createDirectories(directory);
+            }
+            processor.textprocessor();
+            return null;
+        } catch (IOException e) {
+            return new TextProcessorException("Error Writing to Output File");
+        } catch (TextProcessorException e) {
+            return e;
+        }
+    }
+
+    /**
+     * Returns the output file name of an input file.
+     */
+    static String outputFor(String template, Path input) {
+        String file = input.getFileName().toString();
+        int dot = file.lastIndexOf('.');
+        String name = dot > 0 ? file.substring(0, dot) : file;
+        String extension = dot > 0 ? file.substring(dot + 1) : "";
+        return template.replace("{file}", file).replace("{name}", name).replace("{ext}", extension);
+    }
+
+    /**
+     * Returns the files named by the inputs, with directories and glob
+     * patterns expanded into their files in name order.
+     */
+    static List<Path> expand(List<String> inputs) throws TextProcessorException {
+        List<Path> files = new ArrayList<>();
+        try {
+            for (String input : inputs) {
+                Path path = Path.of(input);
+                if (isGlob(input)) {
+                    files.addAll(match(input));
+                } else if (Files.isDirectory(path)) {
+                    try (Stream<Path> entries = Files.list(path)) {
+                        files.addAll(entries.filter(Files::isRegularFile).sorted().collect(Collectors.toList()));
+                    }
+                } else {
+                    // a missing file is reported when it is processed, like any other failure
+                    files.add(path);
+                }
+            }
+        } catch (IOException e) {
+            throw new TextProcessorException("Error reading the file");
+        }
+        return files;
+    }
+
+    private static boolean isGlob(String input) {
+        return input.chars().anyMatch(c -> GLOB_CHARACTERS.indexOf(c) >= 0);
+    }
+
+    private static List<Path> match(String pattern) throws IOException {
+        // only the directories below the part of the pattern without wildcards are searched
+        int wildcard = 0;
+        while (GLOB_CHARACTERS.indexOf(pattern.charAt(wildcard)) < 0) {
+            wildcard++;
+        }
+        int end = pattern.lastIndexOf(File.separatorChar, wildcard);
+        Path base = Path.of(pattern.substring(0, end + 1));
+        String rest = pattern.substring(end + 1);
+        int depth = rest.contains("**") ? Integer.MAX_VALUE
+                : (int) rest.chars().filter(c -> c == File.separatorChar).count() + 1;
+
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+        try (Stream<Path> entries = Files.walk(base, depth)) {
+            return entries.filter(path -> matcher.matches(path) && Files.isRegularFile(path))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static <T> T await(Future<T> result) throws TextProcessorException {
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            // processing a file only throws unchecked exceptions and errors
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw (RuntimeException) e.getCause();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TextProcessorException("Error reading the file");
+        }
+    }
+}
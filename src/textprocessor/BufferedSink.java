@@ -0,0 +1,437 @@
+package textprocessor;
+
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * An {@link OutputSink} that collects the output in large reusable
+ * buffers and hands it to a channel in batches.
+ *
+ * Lines are copied into a char buffer, encoded into a byte buffer with
+ * the default charset once the char buffer is full, and written with one
+ * channel write per batch, so there is no system call or lock per line.
+ * Characters that cannot be encoded are replaced, as a Writer or
+ * PrintStream would do. A line-buffered sink also flushes after every
+ * line, for interactive use.
+ *
+ * Bytes that need no encoding are not copied when the channel can gather:
+ * the sink keeps slices of the source buffers, joins slices that follow
+ * each other in the same buffer, and writes up to {@link #GATHER_SIZE}
+ * of them with one gathering write.
+ *
+ * A sink for a small output gets smaller buffers, which matters when
+ * many small files are processed one after the other.
+ */
+final class BufferedSink implements OutputSink {
+    static final int BUFFER_SIZE = 64 * 1024;
+    static final int MIN_BUFFER_SIZE = 4 * 1024;
+    static final int GATHER_SIZE = 1024;
+
+    private final WritableByteChannel channel;
+    private final Flushable target;
+    private final boolean ownsChannel;
+    private final boolean lineBuffered;
+    private final CharsetEncoder encoder;
+    private final CharBuffer chars;
+    private final ByteBuffer bytes;
+    private final String lineSeparator = System.lineSeparator();
+
+    // slices of raw bytes waiting for a gathering write
+    private final ByteBuffer[] gathered = new ByteBuffer[GATHER_SIZE];
+    private int gatheredCount;
+    private ByteBuffer lastSource;
+    private int lastStart;
+    private int lastEnd;
+    private long bytesWritten;
+
+    // a copy of the output, kept until it grows past copyLimit
+    private boolean copying;
+    private int copyLimit;
+    private byte[] copied;
+    private int copiedLength;
+
+    private BufferedSink(WritableByteChannel channel, Flushable target, boolean ownsChannel,
+                         boolean lineBuffered, boolean direct, int bufferSize) {
+        this.channel = channel;
+        this.target = target;
+        this.ownsChannel = ownsChannel;
+        this.lineBuffered = lineBuffered;
+        this.encoder = Charset.defaultCharset().newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+        this.chars = CharBuffer.allocate(bufferSize);
+        int capacity = (int) Math.ceil(bufferSize * (double) encoder.maxBytesPerChar());
+        this.bytes = direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    /**
+     * Returns a sink that writes to an existing file through a FileChannel.
+     */
+    static BufferedSink toFile(Path path, boolean lineBuffered) throws IOException {
+        return toFile(path, lineBuffered, BUFFER_SIZE);
+    }
+
+    /**
+     * Returns a sink that writes to an existing file, with buffers sized for
+     * about expectedSize characters of output. Larger outputs are written in
+     * more batches.
+     */
+    static BufferedSink toFile(Path path, boolean lineBuffered, long expectedSize) throws IOException {
+        int bufferSize = (int) Math.max(MIN_BUFFER_SIZE, Math.min(BUFFER_SIZE, expectedSize));
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        return new BufferedSink(channel, null, true, lineBuffered, true, bufferSize);
+    }
+
+    /**
+     * Returns a sink that writes to an existing file, like
+     * {@link #toFile(Path, boolean)}, but through a stream: interrupting the
+     * thread closes a FileChannel in the middle of a write, while a run
+     * that ends with an interrupt still has its output to flush.
+     */
+    static BufferedSink toFileUninterruptibly(Path path, boolean lineBuffered) throws IOException {
+        FileOutputStream stream = new FileOutputStream(path.toFile());
+        return new BufferedSink(new StreamChannel(stream), null, true, lineBuffered, false, BUFFER_SIZE);
+    }
+
+    /**
+     * Returns a sink that writes to the current System.out, without closing it.
+     */
+    static BufferedSink toStdout(boolean lineBuffered) {
+        return toStream(System.out, lineBuffered);
+    }
+
+    /**
+     * Returns a sink that writes to a stream, without closing it. As with
+     * the stream itself, interrupting the thread does not stop its writes.
+     */
+    static BufferedSink toStream(OutputStream stream, boolean lineBuffered) {
+        return new BufferedSink(new StreamChannel(stream), stream, false, lineBuffered, false, BUFFER_SIZE);
+    }
+
+    /**
+     * Keeps a copy of everything written from now on, as it is handed to
+     * the channel, for {@link #copy()}. A copy that grows past limit bytes
+     * is dropped.
+     */
+    void keepCopy(long limit) {
+        copying = true;
+        copyLimit = (int) Math.min(limit, Integer.MAX_VALUE - 8);
+        copied = new byte[Math.min(copyLimit, BUFFER_SIZE)];
+        copiedLength = 0;
+    }
+
+    /**
+     * Returns the copy of the output since {@link #keepCopy}, complete once
+     * the sink is flushed or closed, or null if it was dropped or never kept.
+     */
+    byte[] copy() {
+        if (!copying || copied == null) {
+            return null;
+        }
+        return copiedLength == copied.length ? copied : Arrays.copyOf(copied, copiedLength);
+    }
+
+    @Override
+    public void writeLine(String line) throws IOException {
+        write(line);
+        write(lineSeparator);
+        if (lineBuffered) {
+            flush();
+        }
+    }
+
+    @Override
+    public void write(String text) throws IOException {
+        int offset = 0;
+        while (offset < text.length()) {
+            int count = Math.min(chars.remaining(), text.length() - offset);
+            text.getChars(offset, offset + count, chars.array(), chars.arrayOffset() + chars.position());
+            chars.position(chars.position() + count);
+            offset += count;
+            if (!chars.hasRemaining()) {
+                encode(false);
+            }
+        }
+    }
+
+    @Override
+    public void writePadded(long number, int width) throws IOException {
+        int length = Math.max(width, LineTemplate.digits(number));
+        if (chars.remaining() < length) {
+            encode(false);
+        }
+
+        // the digits go straight into the buffer, from the last one back
+        char[] array = chars.array();
+        int start = chars.arrayOffset() + chars.position();
+        long remaining = number;
+        for (int i = start + length - 1; i >= start; i--) {
+            array[i] = (char) ('0' + remaining % 10);
+            remaining /= 10;
+        }
+        chars.position(chars.position() + length);
+    }
+
+    @Override
+    public void writeBytes(ByteBuffer source, int start, int length) throws IOException {
+        if (length == 0) {
+            return;
+        }
+        // whatever was written before these bytes goes out first
+        finishChars();
+
+        if (!(channel instanceof GatheringByteChannel)) {
+            copy(source.slice(start, length));
+        } else if (gatheredCount > 0 && source == lastSource && start == lastEnd && bytes.position() == 0) {
+            // these bytes follow the previous slice, with nothing written in between, so they are written as one
+            lastEnd = start + length;
+            gathered[gatheredCount - 1] = source.slice(lastStart, lastEnd - lastStart);
+        } else {
+            if (bytes.position() > 0 || gatheredCount == GATHER_SIZE) {
+                drain();
+            }
+            gathered[gatheredCount++] = source.slice(start, length);
+            lastSource = source;
+            lastStart = start;
+            lastEnd = start + length;
+        }
+
+        if (lineBuffered) {
+            flush();
+        }
+    }
+
+    @Override
+    public void copyBytes(byte[] source, int start, int length) throws IOException {
+        finishChars();
+        // the byte buffer is written after the gathered slices, which came first
+        copy(ByteBuffer.wrap(source, start, length));
+        if (lineBuffered) {
+            flush();
+        }
+    }
+
+    @Override
+    public void transferFrom(FileChannel source, long position, long count) throws IOException {
+        finishChars();
+        drain();
+        keep(source, position, count);
+
+        ProcessingEvents.OutputFlush event = ProcessingEvents.beginFlush();
+        long transferred = 0;
+        while (transferred < count) {
+            long sent = source.transferTo(position + transferred, count - transferred, channel);
+            if (sent <= 0) {
+                throw new IOException("Error copying the input to the output");
+            }
+            transferred += sent;
+            bytesWritten += sent;
+        }
+        if (target != null) {
+            target.flush();
+        }
+
+        ProcessingEvents.endFlush(event, transferred);
+    }
+
+    @Override
+    public long bytesWritten() {
+        return bytesWritten;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        encode(false);
+        drain();
+        if (target != null) {
+            target.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            encode(true);
+            while (encoder.flush(bytes).isOverflow()) {
+                drain();
+            }
+            drain();
+            if (target != null) {
+                target.flush();
+            }
+        } finally {
+            if (ownsChannel) {
+                channel.close();
+            }
+        }
+    }
+
+    private void copy(ByteBuffer source) throws IOException {
+        while (source.hasRemaining()) {
+            if (!bytes.hasRemaining()) {
+                drain();
+            }
+            int count = Math.min(bytes.remaining(), source.remaining());
+            bytes.put(source.slice(source.position(), count));
+            source.position(source.position() + count);
+        }
+    }
+
+    /*
+     * Encodes all the buffered chars, including a lone trailing high
+     * surrogate, before raw bytes are written after them.
+     */
+    private void finishChars() throws IOException {
+        if (chars.position() == 0) {
+            return;
+        }
+        encode(true);
+        while (encoder.flush(bytes).isOverflow()) {
+            drain();
+        }
+        encoder.reset();
+    }
+
+    /*
+     * Encodes the buffered chars. Unless this is the end of the output, a
+     * trailing high surrogate is kept until the rest of its pair arrives.
+     */
+    private void encode(boolean endOfInput) throws IOException {
+        chars.flip();
+        while (encoder.encode(chars, bytes, endOfInput).isOverflow()) {
+            drain();
+        }
+        chars.compact();
+    }
+
+    private void drain() throws IOException {
+        ProcessingEvents.OutputFlush event = ProcessingEvents.beginFlush();
+        long before = bytesWritten;
+
+        // the gathered slices were written before anything in the byte buffer
+        if (gatheredCount > 0) {
+            for (int i = 0; i < gatheredCount; i++) {
+                keep(gathered[i]);
+            }
+            GatheringByteChannel gathering = (GatheringByteChannel) channel;
+            while (gathered[gatheredCount - 1].hasRemaining()) {
+                bytesWritten += gathering.write(gathered, 0, gatheredCount);
+            }
+            Arrays.fill(gathered, 0, gatheredCount, null);
+            gatheredCount = 0;
+            lastSource = null;
+        }
+
+        bytes.flip();
+        keep(bytes);
+        while (bytes.hasRemaining()) {
+            bytesWritten += channel.write(bytes);
+        }
+        bytes.clear();
+
+        ProcessingEvents.endFlush(event, bytesWritten - before);
+    }
+
+    /*
+     * Adds the remaining bytes of a buffer to the copy, without moving it.
+     */
+    private void keep(ByteBuffer source) {
+        int count = source.remaining();
+        if (makeRoom(count)) {
+            source.get(source.position(), copied, copiedLength, count);
+            copiedLength += count;
+        }
+    }
+
+    /*
+     * Adds bytes that go from channel to channel to the copy, by reading
+     * them from the source as well.
+     */
+    private void keep(FileChannel source, long position, long count) throws IOException {
+        if (!makeRoom(count)) {
+            return;
+        }
+        ByteBuffer target = ByteBuffer.wrap(copied, copiedLength, (int) count);
+        while (target.hasRemaining()) {
+            if (source.read(target, position + target.position() - copiedLength) < 0) {
+                throw new IOException("Error copying the input to the output");
+            }
+        }
+        copiedLength += (int) count;
+    }
+
+    /*
+     * Makes room for count more bytes in the copy, and returns false if
+     * there is no copy, or it would grow too large and is dropped.
+     */
+    private boolean makeRoom(long count) {
+        if (copied == null) {
+            return false;
+        }
+        if (count > copyLimit - copiedLength) {
+            copied = null;
+            return false;
+        }
+        if (count > copied.length - copiedLength) {
+            int grown = (int) Math.min(copyLimit, Math.max(copiedLength + count, 2L * copied.length));
+            copied = Arrays.copyOf(copied, grown);
+        }
+        return true;
+    }
+
+    /*
+     * Writes to a stream straight from the heap buffers. Unlike the channel
+     * of Channels.newChannel, it is not closed by interrupting the thread.
+     */
+    private static final class StreamChannel implements WritableByteChannel {
+        private final OutputStream stream;
+        private boolean open = true;
+
+        StreamChannel(OutputStream stream) {
+            this.stream = stream;
+        }
+
+        @Override
+        public int write(ByteBuffer source) throws IOException {
+            if (!open) {
+                throw new ClosedChannelException();
+            }
+            int count = source.remaining();
+            if (source.hasArray()) {
+                stream.write(source.array(), source.arrayOffset() + source.position(), count);
+                source.position(source.limit());
+            } else {
+                byte[] copy = new byte[count];
+                source.get(copy);
+                stream.write(copy);
+            }
+            return count;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() throws IOException {
+            open = false;
+            stream.close();
+        }
+    }
+}
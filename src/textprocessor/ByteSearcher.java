@@ -0,0 +1,82 @@
+package textprocessor;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Finds a fixed sequence of bytes with the Boyer-Moore-Horspool algorithm.
+ *
+ * The search compares the last byte of the needle first and, on a
+ * mismatch, skips ahead by up to the length of the needle, so on average
+ * it looks at only a fraction of the bytes it searches. With vectorized
+ * {@link ScanKernels}, it instead finds each candidate for the first byte
+ * of the needle a whole vector at a time, and compares the rest of the
+ * needle there. A searcher is immutable and can be shared between threads.
+ */
+final class ByteSearcher {
+    private final byte[] needle;
+    private final int[] shifts = new int[256];
+
+    ByteSearcher(byte[] needle) {
+        this.needle = needle.clone();
+
+        // how far the needle can move when a byte is under its last position
+        int last = needle.length - 1;
+        Arrays.fill(shifts, needle.length);
+        for (int i = 0; i < last; i++) {
+            shifts[needle[i] & 0xFF] = last - i;
+        }
+    }
+
+    /**
+     * Returns the index of the first occurrence of the needle between
+     * from (inclusive) and to (exclusive), or -1 if there is none.
+     */
+    int indexOf(ByteBuffer haystack, int from, int to) {
+        int last = needle.length - 1;
+        if (last < 0) {
+            return from;
+        }
+        if (ScanKernels.SELECTED.isVectorized()) {
+            return candidateIndexOf(haystack, from, to);
+        }
+        byte lastByte = needle[last];
+
+        int index = from;
+        while (index + last < to) {
+            byte value = haystack.get(index + last);
+            if (value == lastByte) {
+                int j = last - 1;
+                while (j >= 0 && haystack.get(index + j) == needle[j]) {
+                    j--;
+                }
+                if (j < 0) {
+                    return index;
+                }
+            }
+            index += shifts[value & 0xFF];
+        }
+        return -1;
+    }
+
+    private int candidateIndexOf(ByteBuffer haystack, int from, int to) {
+        ScanKernels kernels = ScanKernels.SELECTED;
+        int lastStart = to - needle.length;
+        int index = from;
+        while (index <= lastStart) {
+            index = kernels.indexOf(haystack, index, lastStart + 1, needle[0]);
+            if (index < 0) {
+                return -1;
+            }
+            int j = 1;
+            while (j < needle.length && haystack.get(index + j) == needle[j]) {
+                j++;
+            }
+            if (j == needle.length) {
+                return index;
+            }
+            index++;
+        }
+        return -1;
+    }
+}
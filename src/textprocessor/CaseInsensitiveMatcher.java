@@ -0,0 +1,65 @@
+package textprocessor;
+
+/**
+ * Finds a substring in a line, ignoring case, without allocating.
+ *
+ * Two characters match if they are equal, or equal after
+ * {@link Character#toUpperCase(char)} followed by
+ * {@link Character#toLowerCase(char)}. This is the rule of
+ * {@link String#equalsIgnoreCase} and {@link String#regionMatches(boolean, int, String, int, int)}:
+ * it does not depend on the default locale, and a match always has the
+ * same length as the needle. The needle is folded once, and each line is
+ * compared in place.
+ */
+final class CaseInsensitiveMatcher {
+    private final String needle;
+    private final char first;
+    private final boolean filterFirst;
+
+    CaseInsensitiveMatcher(String needle) {
+        this.needle = needle;
+        this.first = needle.isEmpty() ? 0 : fold(needle.charAt(0));
+        // surrogates are compared as whole code points, so they cannot be screened one char at a time
+        this.filterFirst = !needle.isEmpty() && !Character.isSurrogate(needle.charAt(0));
+    }
+
+    /**
+     * Returns the index of the first match in the line, or -1 if there is none.
+     */
+    int indexOf(String line) {
+        return indexOf(line, 0);
+    }
+
+    /**
+     * Returns the index of the first match in the line at or after from, or -1 if there is none.
+     */
+    int indexOf(String line, int from) {
+        int length = needle.length();
+        int last = line.length() - length;
+
+        for (int index = Math.max(from, 0); index <= last; index++) {
+            // only try a full comparison where the first character matches
+            if (filterFirst) {
+                char character = line.charAt(index);
+                if (character != needle.charAt(0) && fold(character) != first) {
+                    continue;
+                }
+            }
+            if (line.regionMatches(true, index, needle, 0, length)) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the length of a match, which is always the length of the needle.
+     */
+    int length() {
+        return needle.length();
+    }
+
+    private static char fold(char character) {
+        return Character.toLowerCase(Character.toUpperCase(character));
+    }
+}
@@ -0,0 +1,394 @@
+package textprocessor;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * A resident process that runs the command lines sent by
+ * {@link DaemonClient}, so that a run does not pay for starting a JVM and
+ * compiling the code again.
+ *
+ * The daemon listens on a Unix domain socket, by default daemon.sock in a
+ * textprocessor-USER directory of the temporary directory, which only its
+ * owner can use: the daemon and the client both refuse a directory that
+ * is not theirs alone. Each connection is one job: the client sends its working
+ * directory, its textprocessor.* settings and its arguments; the daemon
+ * runs them through {@link Main}, streams the standard output and error
+ * back as they are written, and ends with the exit status. A job reading
+ * the standard input asks the client for it as it goes. Each job gets a
+ * virtual thread on a JVM that has them (Java 21 and later), and a thread
+ * of a fixed pool on the Java 17 this is built for. Either way only a set
+ * number of jobs run at the same time, and further connections wait for
+ * one of them to finish.
+ *
+ * The default charset is fixed when a JVM starts, so a client with
+ * another charset is told to run its job itself.
+ */
+public final class Daemon implements Closeable {
+    static final String SOCKET_PROPERTY = "textprocessor.socket";
+    static final int VERSION = 2;
+
+    // the frames sent back to the client
+    static final byte STDOUT = 1;
+    static final byte STDERR = 2;
+    static final byte EXIT = 3;
+    static final byte REJECTED = 4;
+    // asks for up to a number of bytes of the standard input, answered with a count and the bytes, or -1
+    static final byte STDIN = 5;
+
+    private static final int MAX_STRINGS = 64 * 1024;
+
+    private final Path socket;
+    private final ServerSocketChannel server;
+    private final ExecutorService jobs;
+    private final Semaphore running;
+
+    private Daemon(Path socket, ServerSocketChannel server, int jobs) {
+        this.socket = socket;
+        this.server = server;
+        this.jobs = newJobExecutor(jobs);
+        this.running = new Semaphore(jobs);
+    }
+
+    /*
+     * Returns an executor with a virtual thread per job where the JVM has
+     * them, found by reflection since they are not in Java 17, or else a
+     * fixed pool of jobs threads.
+     */
+    static ExecutorService newJobExecutor(int jobs) {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // missing, or a preview feature that is not enabled
+            return Executors.newFixedThreadPool(jobs);
+        }
+    }
+
+    /**
+     * Runs a daemon until the JVM is stopped. The socket is the first
+     * argument, or -Dtextprocessor.socket, or the default one; the number
+     * of jobs run at the same time is -Dtextprocessor.daemonJobs, twice the
+     * number of processors by default.
+     */
+    public static void main(String[] args) throws IOException {
+        Path socket = args.length > 0 ? Path.of(args[0]) : socket();
+        int jobs = Integer.getInteger("textprocessor.daemonJobs", 2 * Runtime.getRuntime().availableProcessors());
+        Daemon daemon = start(socket, Math.max(jobs, 1));
+        Runtime.getRuntime().addShutdownHook(new Thread(daemon::closeQuietly));
+        System.err.println("textprocessor daemon listening on " + socket);
+    }
+
+    /**
+     * Returns the socket of -Dtextprocessor.socket, or the default one.
+     */
+    static Path socket() {
+        String socket = System.getProperty(SOCKET_PROPERTY);
+        if (socket != null) {
+            return Path.of(socket);
+        }
+        return Path.of(System.getProperty("java.io.tmpdir"), "textprocessor-" + System.getProperty("user.name"),
+                "daemon.sock");
+    }
+
+    /**
+     * Starts listening on a socket, and accepts jobs on a thread of its own.
+     */
+    static Daemon start(Path socket, int jobs) throws IOException {
+        // only the owner may enter the directory of the socket
+        Path directory = socket.toAbsolutePath().getParent();
+        if (!Files.isDirectory(directory)) {
+            try {
+                Files.createDirectories(directory,
+                        PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+            } catch (UnsupportedOperationException e) {
+                Files.createDirectories(directory);
+            }
+        }
+        // it may have been there already, made by someone else
+        if (!isPrivateDirectory(directory)) {
+            throw new IOException("The directory of the socket is not private to its owner: " + directory);
+        }
+
+        // a socket left behind by a daemon that is gone is replaced
+        if (Files.exists(socket)) {
+            try (SocketChannel running = DaemonClient.connect(socket)) {
+                if (running != null) {
+                    throw new IOException("A daemon is already listening on " + socket);
+                }
+            }
+            Files.delete(socket);
+        }
+
+        // Java cannot set the umask, so the socket is bound in a directory of its own, which the temporary
+        // directories are, given its mode there and only then moved into place
+        ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        Path bindDirectory = Files.createTempDirectory(directory, "bind");
+        Path bound = bindDirectory.resolve(socket.getFileName());
+        try {
+            server.bind(UnixDomainSocketAddress.of(bound));
+            try {
+                Files.setPosixFilePermissions(bound, PosixFilePermissions.fromString("rw-------"));
+            } catch (UnsupportedOperationException e) {
+                // not a POSIX file system, where the directory is all there is
+            }
+            Files.move(bound, socket);
+        } catch (FileAlreadyExistsException e) {
+            server.close();
+            throw new IOException("A daemon is already listening on " + socket);
+        } catch (IOException e) {
+            server.close();
+            throw e;
+        } finally {
+            Files.deleteIfExists(bound);
+            Files.delete(bindDirectory);
+        }
+
+        Daemon daemon = new Daemon(socket, server, jobs);
+        Thread acceptor = new Thread(daemon::accept, "textprocessor-daemon");
+        acceptor.start();
+        return daemon;
+    }
+
+    /**
+     * Returns whether only the current user can use a directory: it is not
+     * a link, it is theirs, and no one else has any permission on it.
+     * Otherwise another user could have made the directory of the default
+     * socket in the shared temporary directory, and listen in place of the
+     * daemon. A file system without POSIX permissions is trusted as it is.
+     */
+    static boolean isPrivateDirectory(Path directory) throws IOException {
+        if (!Files.isDirectory(directory, LinkOption.NOFOLLOW_LINKS)) {
+            return false;
+        }
+        try {
+            UserPrincipal user = directory.getFileSystem().getUserPrincipalLookupService()
+                    .lookupPrincipalByName(System.getProperty("user.name"));
+            return Files.getOwner(directory, LinkOption.NOFOLLOW_LINKS).equals(user)
+                    && Files.getPosixFilePermissions(directory, LinkOption.NOFOLLOW_LINKS)
+                            .equals(PosixFilePermissions.fromString("rwx------"));
+        } catch (UnsupportedOperationException e) {
+            return true;
+        }
+    }
+
+    private void accept() {
+        while (server.isOpen()) {
+            SocketChannel connection;
+            try {
+                connection = server.accept();
+            } catch (AsynchronousCloseException e) {
+                return;
+            } catch (IOException e) {
+                // a failed connection does not stop the daemon
+                continue;
+            }
+
+            try {
+                jobs.execute(() -> {
+                    // virtual threads are not limited by a pool size
+                    running.acquireUninterruptibly();
+                    try {
+                        serve(connection);
+                    } finally {
+                        running.release();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                closeQuietly(connection);
+            }
+        }
+    }
+
+    private void serve(SocketChannel connection) {
+        try (connection) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(connection)));
+            DataOutputStream frames = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(connection)));
+
+            int version = in.readInt();
+            String charset = in.readUTF();
+            if (version != VERSION || !charset.equals(Charset.defaultCharset().name())) {
+                frames.writeByte(REJECTED);
+                frames.flush();
+                return;
+            }
+
+            Path workingDirectory = Path.of(in.readUTF());
+            Properties settings = new Properties();
+            for (int i = count(in); i > 0; i--) {
+                settings.setProperty(in.readUTF(), in.readUTF());
+            }
+            String[] args = new String[count(in)];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = in.readUTF();
+            }
+
+            PrintStream out = new PrintStream(new FrameStream(frames, STDOUT), false, Charset.defaultCharset());
+            PrintStream err = new PrintStream(new FrameStream(frames, STDERR), true, Charset.defaultCharset());
+            InputStream stdin = new InputFrameStream(in, frames);
+            int status = 0;
+            try {
+                Main.run(args, workingDirectory, settings, stdin, out, err);
+            } catch (RuntimeException e) {
+                // what the JVM would print before exiting with status 1
+                err.print("Exception in thread \"main\" ");
+                e.printStackTrace(err);
+                status = 1;
+            }
+            out.flush();
+            err.flush();
+
+            synchronized (frames) {
+                frames.writeByte(EXIT);
+                frames.writeInt(status);
+                frames.flush();
+            }
+        } catch (IOException e) {
+            // the client went away
+        }
+    }
+
+    private static int count(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        if (count < 0 || count > MAX_STRINGS) {
+            throw new IOException("Invalid request");
+        }
+        return count;
+    }
+
+    /**
+     * Stops accepting jobs, lets the running ones finish and removes the socket.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            server.close();
+            jobs.shutdown();
+        } finally {
+            Files.deleteIfExists(socket);
+        }
+    }
+
+    private void closeQuietly() {
+        closeQuietly(this);
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // nothing more can be done
+        }
+    }
+
+    /*
+     * Sends what is written as frames of one kind. The standard output and
+     * error share the connection, so each frame is written as a whole.
+     */
+    private static final class FrameStream extends OutputStream {
+        private final DataOutputStream frames;
+        private final byte kind;
+
+        FrameStream(DataOutputStream frames, byte kind) {
+            this.frames = frames;
+            this.kind = kind;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) {
+                return;
+            }
+            synchronized (frames) {
+                frames.writeByte(kind);
+                frames.writeInt(length);
+                frames.write(bytes, offset, length);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            synchronized (frames) {
+                frames.flush();
+            }
+        }
+    }
+
+    /*
+     * Reads the client's standard input, by asking for it each time the
+     * job reads. The answers come back on the connection, which the client
+     * sends nothing else on once the job has started.
+     */
+    private static final class InputFrameStream extends InputStream {
+        private final DataInputStream in;
+        private final DataOutputStream frames;
+        private boolean ended;
+
+        InputFrameStream(DataInputStream in, DataOutputStream frames) {
+            this.in = in;
+            this.frames = frames;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (ended) {
+                return -1;
+            }
+            synchronized (frames) {
+                frames.writeByte(STDIN);
+                frames.writeInt(length);
+                frames.flush();
+            }
+            int count = in.readInt();
+            if (count < 0) {
+                ended = true;
+                return -1;
+            }
+            if (count > length) {
+                throw new IOException("Invalid request");
+            }
+            in.readFully(bytes, offset, count);
+            return count;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package textprocessor;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UTFDataFormatException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.Properties;
+
+/**
+ * The command line client of {@link Daemon}. It takes the same arguments
+ * as {@link Main} and gives the same output, but the job is run by the
+ * daemon. When no daemon is listening, or the daemon cannot run the job
+ * as this JVM would, the job is run here instead.
+ */
+public final class DaemonClient {
+    /** Returned by {@link #run} when the daemon did not run the job. */
+    static final int NOT_RUN = -1;
+
+    private DaemonClient() {
+    }
+
+    public static void main(String[] args) {
+        int status;
+        try (SocketChannel connection = connect(Daemon.socket())) {
+            status = connection == null ? NOT_RUN : run(connection, args, Path.of("").toAbsolutePath(),
+                    Main.commandLineSettings(), System.in, System.out, System.err);
+        } catch (UTFDataFormatException e) {
+            // an argument too long to send, before the job was started
+            status = NOT_RUN;
+        } catch (IOException e) {
+            System.err.println("Lost the connection to the textprocessor daemon");
+            status = 1;
+        }
+
+        if (status == NOT_RUN) {
+            Main.main(args);
+        } else if (status != 0) {
+            System.exit(status);
+        }
+    }
+
+    /**
+     * Returns a connection to the daemon listening on a socket, or null if
+     * there is none. A socket in a directory that others can use may not be
+     * the daemon's, and is never connected to.
+     */
+    static SocketChannel connect(Path socket) throws IOException {
+        if (!Daemon.isPrivateDirectory(socket.toAbsolutePath().getParent())) {
+            return null;
+        }
+        SocketChannel connection = SocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            connection.connect(UnixDomainSocketAddress.of(socket));
+            return connection;
+        } catch (IOException e) {
+            connection.close();
+            return null;
+        }
+    }
+
+    /**
+     * Sends a job to the daemon, and copies its output to out and err as it
+     * comes. What the job reads of the standard input is read from in.
+     *
+     * @return The exit status of the job, or {@link #NOT_RUN}.
+     * @throws IOException If the connection is lost.
+     */
+    static int run(SocketChannel connection, String[] args, Path workingDirectory, Properties settings,
+                   InputStream in, OutputStream out, OutputStream err) throws IOException {
+        DataOutputStream request = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(connection)));
+        request.writeInt(Daemon.VERSION);
+        request.writeUTF(Charset.defaultCharset().name());
+        request.writeUTF(workingDirectory.toString());
+        request.writeInt(settings.size());
+        for (String name : settings.stringPropertyNames()) {
+            request.writeUTF(name);
+            request.writeUTF(settings.getProperty(name));
+        }
+        request.writeInt(args.length);
+        for (String arg : args) {
+            request.writeUTF(arg);
+        }
+        request.flush();
+
+        DataInputStream frames = new DataInputStream(new BufferedInputStream(Channels.newInputStream(connection)));
+        byte[] buffer = new byte[BufferedSink.BUFFER_SIZE];
+        while (true) {
+            byte kind;
+            try {
+                kind = frames.readByte();
+            } catch (EOFException e) {
+                throw new IOException("The daemon closed the connection", e);
+            }
+
+            if (kind == Daemon.REJECTED) {
+                return NOT_RUN;
+            } else if (kind == Daemon.EXIT) {
+                return frames.readInt();
+            } else if (kind == Daemon.STDIN) {
+                // read what is there, so that the job sees each line as it is typed or piped
+                int count = in.read(buffer, 0, Math.min(buffer.length, frames.readInt()));
+                request.writeInt(count);
+                if (count > 0) {
+                    request.write(buffer, 0, count);
+                }
+                request.flush();
+                continue;
+            }
+
+            // the output is passed on as it comes, so a line-buffered job is seen line by line
+            OutputStream target = kind == Daemon.STDOUT ? out : err;
+            int remaining = frames.readInt();
+            while (remaining > 0) {
+                int count = frames.read(buffer, 0, Math.min(buffer.length, remaining));
+                if (count < 0) {
+                    throw new IOException("The daemon closed the connection");
+                }
+                target.write(buffer, 0, count);
+                remaining -= count;
+            }
+            target.flush();
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package textprocessor;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads the complete lines of a file that is still being written, like
+ * tail -f: the lines already there, then each line as it is appended.
+ *
+ * {@link #readLine} returns null when there is no complete line yet, and
+ * {@link #await} waits for the file to change. A line is only returned
+ * once its terminator has been written, with the same terminators as
+ * {@link LineReader}. Log rotation is followed: when the file is
+ * truncated it is read again from the start, and when it is renamed and
+ * created again the rest of the old file is read before the new one.
+ * The last line of the old file is complete even without a terminator.
+ * A file truncated and written again past where it was read is told
+ * from one that grew by the last {@link #CHECK_SIZE} bytes read, which
+ * are looked at again before reading on.
+ *
+ * Interrupting the thread ends following: {@link #await} then returns
+ * false, and so does it after an interrupt has closed the file in the
+ * middle of a read, in which case {@link #readLine} returns null.
+ *
+ * Changes are noticed through a {@link WatchService} on the directory
+ * where the file system has one, and by looking at the file every
+ * {@link #POLL_MILLIS} milliseconds in any case, since some file systems
+ * never report them.
+ */
+final class FileFollower implements Closeable {
+    static final long POLL_MILLIS = 500;
+
+    static final int CHECK_SIZE = 64;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path path;
+    private final CharsetDecoder decoder;
+    private final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+    private final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+    // decoded text that is not returned yet, from start on
+    private final StringBuilder pending = new StringBuilder();
+    private int start;
+    // pending is searched for a terminator from here on
+    private int scanned;
+    private final WatchService watcher;
+    private FileChannel channel;
+    private Object fileKey;
+    private long bytesRead;
+    private boolean interrupted;
+    // the last bytes read from the file, and the same bytes read again
+    private final byte[] lastBytes = new byte[CHECK_SIZE];
+    private final ByteBuffer check = ByteBuffer.allocate(CHECK_SIZE);
+    private int lastCount;
+
+    FileFollower(Path path, Charset charset) throws IOException {
+        this.path = path;
+        this.decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        open();
+        this.watcher = watch(path);
+    }
+
+    private void open() throws IOException {
+        channel = FileChannel.open(path);
+        fileKey = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+        decoder.reset();
+        bytes.clear();
+        lastCount = 0;
+    }
+
+    private static WatchService watch(Path path) {
+        Path directory = path.toAbsolutePath().getParent();
+        try {
+            WatchService watcher = directory.getFileSystem().newWatchService();
+            directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            return watcher;
+        } catch (IOException | UnsupportedOperationException e) {
+            // polling is enough
+            return null;
+        }
+    }
+
+    /**
+     * Returns the next complete line without its terminator, or null if
+     * none has been written yet.
+     */
+    String readLine() throws IOException {
+        if (interrupted) {
+            return null;
+        }
+        try {
+            return nextCompleteLine();
+        } catch (ClosedByInterruptException e) {
+            interrupted = true;
+            return null;
+        }
+    }
+
+    private String nextCompleteLine() throws IOException {
+        while (true) {
+            String line = nextLine();
+            if (line != null) {
+                return line;
+            }
+            // a file written again from its start is not read on from where the old one ended
+            boolean rewritten = isRewritten();
+            if (!rewritten && read()) {
+                continue;
+            }
+
+            // at the end of what has been written so far, or of the old file
+            if (!(rewritten ? restart() : reopenIfRotated())) {
+                return null;
+            }
+            if (start < pending.length()) {
+                // the old file's last line, which will not be completed; a last '\r' ends it
+                int end = pending.charAt(pending.length() - 1) == '\r' ? pending.length() - 1 : pending.length();
+                line = pending.substring(start, end);
+                pending.setLength(0);
+                start = 0;
+                scanned = 0;
+                return line;
+            }
+        }
+    }
+
+    /**
+     * Waits until the file may have changed.
+     *
+     * @return false if the thread was interrupted, which ends following.
+     */
+    boolean await() throws IOException {
+        if (interrupted) {
+            return false;
+        }
+        try {
+            if (watcher == null) {
+                Thread.sleep(POLL_MILLIS);
+                return true;
+            }
+            WatchKey key = watcher.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            if (key != null) {
+                // any change in the directory is a reason to look, and only the directory is watched
+                key.pollEvents();
+                key.reset();
+            }
+            return !Thread.currentThread().isInterrupted();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Returns the number of bytes read, from all the files followed.
+     */
+    long bytesRead() {
+        return bytesRead;
+    }
+
+    private String nextLine() {
+        for (int i = Math.max(start, scanned); i < pending.length(); i++) {
+            char character = pending.charAt(i);
+            if (LineReader.isTerminator(character)) {
+                int end = i + 1;
+                if (character == '\r') {
+                    if (end == pending.length()) {
+                        // the '\n' of a "\r\n" may not be written yet
+                        scanned = i;
+                        return null;
+                    }
+                    if (pending.charAt(end) == '\n') {
+                        end++;
+                    }
+                }
+                String line = pending.substring(start, i);
+                start = end;
+                scanned = end;
+                return line;
+            }
+        }
+        scanned = pending.length();
+        return null;
+    }
+
+    /*
+     * Reads and decodes what has been appended, and returns false if there
+     * was nothing.
+     */
+    private boolean read() throws IOException {
+        int count = channel.read(bytes);
+        if (count <= 0) {
+            return false;
+        }
+        bytesRead += count;
+        remember(count);
+
+        // the returned lines are dropped before more text is added
+        pending.delete(0, start);
+        scanned -= start;
+        start = 0;
+
+        bytes.flip();
+        CoderResult result;
+        do {
+            result = decoder.decode(bytes, chars, false);
+            chars.flip();
+            pending.append(chars);
+            chars.clear();
+        } while (result.isOverflow());
+        // an incomplete character waits for its other bytes
+        bytes.compact();
+        return true;
+    }
+
+    /*
+     * Starts again from the start of a truncated file, or opens the file
+     * created in place of a renamed one. Returns false if neither happened.
+     */
+    private boolean reopenIfRotated() throws IOException {
+        if (channel.size() < channel.position()) {
+            return restart();
+        }
+
+        Object key;
+        try {
+            key = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+        } catch (NoSuchFileException e) {
+            // renamed, and not created again yet
+            return false;
+        }
+        if (key == null || key.equals(fileKey)) {
+            return false;
+        }
+        channel.close();
+        open();
+        return true;
+    }
+
+    /*
+     * Reads the file again from its start, after it has been truncated.
+     */
+    private boolean restart() throws IOException {
+        channel.position(0);
+        decoder.reset();
+        bytes.clear();
+        lastCount = 0;
+        return true;
+    }
+
+    /*
+     * Keeps the last bytes just read into the byte buffer.
+     */
+    private void remember(int count) {
+        int kept = Math.min(count, CHECK_SIZE);
+        int shifted = Math.min(lastCount, CHECK_SIZE - kept);
+        System.arraycopy(lastBytes, lastCount - shifted, lastBytes, 0, shifted);
+        bytes.get(bytes.position() - kept, lastBytes, shifted, kept);
+        lastCount = shifted + kept;
+    }
+
+    /*
+     * Returns true if the bytes last read are no longer in the file, which
+     * has then been truncated, whether or not it is written past them again.
+     */
+    private boolean isRewritten() throws IOException {
+        long end = channel.position();
+        if (lastCount == 0) {
+            return false;
+        }
+        if (channel.size() < end) {
+            return true;
+        }
+        check.clear().limit(lastCount);
+        while (check.hasRemaining()) {
+            if (channel.read(check, end - lastCount + check.position()) < 0) {
+                return true;
+            }
+        }
+        return !Arrays.equals(check.array(), 0, lastCount, lastBytes, 0, lastCount);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            channel.close();
+        } finally {
+            if (watcher != null) {
+                watcher.close();
+            }
+        }
+    }
+}
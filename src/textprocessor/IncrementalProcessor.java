@@ -0,0 +1,369 @@
+package textprocessor;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Processes a file again after it has changed, reusing the output of the
+ * parts that have not.
+ *
+ * The input is split into chunks by its content: after its first
+ * {@link #MIN_CHUNK_SIZE} bytes, a chunk ends at the first '\n' after a
+ * gear hash of the last 64 bytes hits a pattern, about once every
+ * {@link #CUT_INTERVAL} bytes, so inserting or removing lines only moves
+ * the chunk boundaries near the change. A sidecar manifest next to the output file records the hash of
+ * the configuration and, for each chunk, its SHA-256 hash, the number of
+ * its first line and where its output is. On the next run the chunks
+ * whose hash is in the manifest are copied from the previous output,
+ * and only the others are processed, on a {@link ParallelProcessor}.
+ * When the plan numbers lines, a chunk is only reused if its lines keep
+ * their numbers, so inserting lines processes everything after them.
+ *
+ * The new output and manifest are written to temporary files and then
+ * moved over the old ones, so an interrupted run leaves the previous
+ * output and manifest as they were. The manifest is ignored when it is
+ * missing, was written for another configuration, or the output file has
+ * changed since; the whole file is then processed.
+ */
+final class IncrementalProcessor {
+    static final long MIN_CHUNK_SIZE = 512 * 1024;
+    static final long CUT_INTERVAL = 512 * 1024;
+    static final long MAX_CHUNK_SIZE = 8 * 1024 * 1024;
+    static final String MANIFEST_SUFFIX = ".manifest";
+
+    private static final int MAGIC = 0x5450494D;
+    private static final int VERSION = 1;
+    // the high bits of a gear hash depend on the last 64 bytes, the low ones on the last few
+    private static final long CUT_MASK = -1L << (Long.SIZE - Long.numberOfTrailingZeros(CUT_INTERVAL));
+    private static final int SCAN_BUFFER_SIZE = 1024 * 1024;
+    // random but fixed, since the chunks of every run must be cut the same way
+    private static final long[] GEAR = new SplittableRandom(0x7465787470726F63L).longs(256).toArray();
+
+    private final Path input;
+    private final Path output;
+    private final Path manifest;
+    private final ProcessingPlan plan;
+    private final byte[] configuration;
+    private final int threads;
+    private final StatsRecorder stats;
+
+    /**
+     * @param configuration The hash of everything that changes the output.
+     */
+    IncrementalProcessor(Path input, Path output, ProcessingPlan plan, byte[] configuration, int threads,
+                         StatsRecorder stats) {
+        this.input = input;
+        this.output = output;
+        this.manifest = output.resolveSibling(output.getFileName() + MANIFEST_SUFFIX);
+        this.plan = plan;
+        this.configuration = configuration;
+        this.threads = threads;
+        this.stats = stats;
+    }
+
+    /**
+     * Returns true if a file can be processed incrementally in the default
+     * charset, whose '\n' bytes always end a line.
+     */
+    static boolean isApplicable() {
+        return MappedLineReader.supports(Charset.defaultCharset());
+    }
+
+    /**
+     * Writes the output file, and its manifest, and returns the number of
+     * bytes written, including those copied from the previous output.
+     */
+    long run() throws IOException {
+        List<Chunk> chunks = split();
+        Map<String, Chunk> previous = readManifest();
+        boolean numbered = plan.usesLineNumbers();
+
+        // the chunks not in the manifest are counted, the others had the same lines before
+        if (numbered) {
+            countLines(chunks, previous);
+        }
+        List<long[]> changed = new ArrayList<>();
+        List<Long> changedFirstLines = new ArrayList<>();
+        long lineNumber = 0;
+        for (Chunk chunk : chunks) {
+            chunk.firstLine = lineNumber;
+            Chunk before = previous.get(chunk.key());
+            if (before != null && (!numbered || before.firstLine == lineNumber)) {
+                chunk.reused = before;
+            } else {
+                changed.add(new long[] {chunk.start, chunk.end});
+                changedFirstLines.add(lineNumber);
+            }
+            lineNumber += chunk.lines;
+        }
+
+        Path newOutput = createTemporaryFile(output);
+        Path newManifest = null;
+        try {
+            long bytesWritten = write(chunks, changed, numbered ? changedFirstLines : null, newOutput);
+            newManifest = writeManifest(chunks, newOutput);
+            Files.move(newOutput, output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.move(newManifest, manifest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return bytesWritten;
+        } finally {
+            Files.deleteIfExists(newOutput);
+            if (newManifest != null) {
+                Files.deleteIfExists(newManifest);
+            }
+        }
+    }
+
+    private long write(List<Chunk> chunks, List<long[]> changed, List<Long> changedFirstLines, Path newOutput)
+            throws IOException {
+        long[] firstLineNumbers = changedFirstLines == null ? null
+                : changedFirstLines.stream().mapToLong(Long::longValue).toArray();
+        try (FileChannel previousOutput = changed.size() == chunks.size() ? null : FileChannel.open(output);
+             ParallelProcessor processor = new ParallelProcessor(input, plan, threads, changed, firstLineNumbers, stats);
+             BufferedSink sink = BufferedSink.toFile(newOutput, false)) {
+            for (Chunk chunk : chunks) {
+                chunk.outputStart = sink.bytesWritten();
+                if (chunk.reused != null) {
+                    sink.transferFrom(previousOutput, chunk.reused.outputStart, chunk.reused.outputLength);
+                } else {
+                    sink.write(processor.nextChunk());
+                    // the output of each chunk is flushed, to know where it ends
+                    sink.flush();
+                }
+                chunk.outputLength = sink.bytesWritten() - chunk.outputStart;
+            }
+            return sink.bytesWritten();
+        }
+    }
+
+    /*
+     * Splits the input into chunks that end just after a '\n', where the
+     * content says, and hashes them.
+     */
+    private List<Chunk> split() throws IOException {
+        List<Chunk> chunks = new ArrayList<>();
+        MessageDigest digest = sha256();
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        byte[] bytes = buffer.array();
+
+        try (FileChannel channel = FileChannel.open(input)) {
+            long chunkStart = 0;
+            long offset = 0;
+            long gear = 0;
+            boolean cut = false;
+            int read;
+            while ((read = channel.read(buffer.clear())) > 0) {
+                int hashed = 0;
+                int i = 0;
+                while (i < read) {
+                    if (cut) {
+                        // the chunk ends with the current line
+                        int end = ScanKernels.SELECTED.indexOf(buffer, i, read, (byte) '\n') + 1;
+                        if (end == 0) {
+                            break;
+                        }
+                        digest.update(bytes, hashed, end - hashed);
+                        hashed = end;
+                        chunks.add(new Chunk(chunkStart, offset + end, digest.digest()));
+                        chunkStart = offset + end;
+                        cut = false;
+                        i = end;
+                        continue;
+                    }
+
+                    // the gear hash only depends on the last 64 bytes, so it starts just before they count
+                    long gearStart = chunkStart + MIN_CHUNK_SIZE - Long.SIZE;
+                    if (offset + i < gearStart) {
+                        i = (int) Math.min(read, gearStart - offset);
+                        gear = 0;
+                        continue;
+                    }
+                    int limit = (int) Math.min(read, chunkStart + MAX_CHUNK_SIZE - offset);
+                    while (i < limit && !cut) {
+                        gear = (gear << 1) + GEAR[bytes[i++] & 0xff];
+                        cut = (gear & CUT_MASK) == 0;
+                    }
+                    cut |= offset + i - chunkStart >= MAX_CHUNK_SIZE;
+                }
+                digest.update(bytes, hashed, read - hashed);
+                offset += read;
+            }
+            if (offset > chunkStart) {
+                chunks.add(new Chunk(chunkStart, offset, digest.digest()));
+            }
+        }
+        return chunks;
+    }
+
+    private void countLines(List<Chunk> chunks, Map<String, Chunk> previous) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try (FileChannel channel = FileChannel.open(input)) {
+            List<Future<Long>> counts = new ArrayList<>();
+            for (Chunk chunk : chunks) {
+                Chunk before = previous.get(chunk.key());
+                if (before == null) {
+                    long[] range = {chunk.start, chunk.end};
+                    counts.add(pool.submit(() -> ParallelProcessor.countLines(channel, range, Charset.defaultCharset())));
+                } else {
+                    counts.add(null);
+                    chunk.lines = before.lines;
+                }
+            }
+            for (int i = 0; i < chunks.size(); i++) {
+                if (counts.get(i) != null) {
+                    chunks.get(i).lines = await(counts.get(i));
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /*
+     * Returns the chunks of the previous output by their hash, or none if
+     * the manifest cannot be used.
+     */
+    private Map<String, Chunk> readManifest() throws IOException {
+        Map<String, Chunk> chunks = new HashMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(manifest)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !Arrays.equals(in.readNBytes(32), configuration)
+                    || in.readLong() != Files.size(output)
+                    || in.readLong() != Files.getLastModifiedTime(output).toMillis()) {
+                return chunks;
+            }
+            for (int count = in.readInt(); count > 0; count--) {
+                Chunk chunk = new Chunk(0, in.readLong(), in.readNBytes(32));
+                chunk.firstLine = in.readLong();
+                chunk.lines = in.readLong();
+                chunk.outputStart = in.readLong();
+                chunk.outputLength = in.readLong();
+                chunks.putIfAbsent(chunk.key(), chunk);
+            }
+            return chunks;
+        } catch (NoSuchFileException e) {
+            return Map.of();
+        } catch (IOException e) {
+            // a damaged manifest is as good as none
+            return Map.of();
+        }
+    }
+
+    private Path writeManifest(List<Chunk> chunks, Path newOutput) throws IOException {
+        Path newManifest = createTemporaryFile(manifest);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(newManifest)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.write(configuration);
+            // moving the output keeps its size and time
+            out.writeLong(Files.size(newOutput));
+            out.writeLong(Files.getLastModifiedTime(newOutput).toMillis());
+            out.writeInt(chunks.size());
+            for (Chunk chunk : chunks) {
+                out.writeLong(chunk.end - chunk.start);
+                out.write(chunk.hash);
+                out.writeLong(chunk.firstLine);
+                out.writeLong(chunk.lines);
+                out.writeLong(chunk.outputStart);
+                out.writeLong(chunk.outputLength);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(newManifest);
+            throw e;
+        }
+        return newManifest;
+    }
+
+    /*
+     * Creates an empty file next to the one it will replace, with the
+     * permissions a new file gets.
+     */
+    private static Path createTemporaryFile(Path target) throws IOException {
+        while (true) {
+            String name = target.getFileName() + "." + Long.toHexString(System.nanoTime()) + ".tmp";
+            try {
+                return Files.createFile(target.resolveSibling(name));
+            } catch (FileAlreadyExistsException e) {
+                // another run picked the same name
+            }
+        }
+    }
+
+    /**
+     * Returns the SHA-256 hash of a string, such as a configuration.
+     */
+    static byte[] hash(String text) {
+        return sha256().digest(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform has SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static <T> T await(Future<T> result) throws IOException {
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+
+    /*
+     * A chunk of the input, and where its output went. Lines are only
+     * counted when the plan numbers them.
+     */
+    private static final class Chunk {
+        final long start;
+        final long end;
+        final byte[] hash;
+        long firstLine;
+        long lines;
+        long outputStart;
+        long outputLength;
+        Chunk reused;
+
+        Chunk(long start, long end, byte[] hash) {
+            this.start = start;
+            this.end = end;
+            this.hash = hash;
+        }
+
+        // chunks are matched by their length and hash
+        String key() {
+            return (end - start) + ":" + HexFormat.of().formatHex(hash);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package textprocessor;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reads lines one at a time from a character stream, so that only the
+ * current line is held in memory.
+ *
+ * Lines are split on the same terminators {@link java.util.Scanner#nextLine()}
+ * recognises ("\r\n", '\n', '\r', '\u2028', '\u2029' and '\u0085'), which
+ * keeps the output identical to reading the whole file with a Scanner.
+ */
+class LineReader implements LineSource {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private final StringBuilder line = new StringBuilder();
+    private int position;
+    private int limit;
+    private boolean terminated;
+
+    LineReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    @Override
+    public String readLine() throws IOException {
+        line.setLength(0);
+        boolean consumed = false;
+
+        while (true) {
+            if (position >= limit && !fill()) {
+                // a trailing line without a terminator is still a line
+                terminated = false;
+                return consumed ? line.toString() : null;
+            }
+            consumed = true;
+
+            // scan the buffered characters for the next terminator
+            int start = position;
+            while (position < limit) {
+                char character = buffer[position];
+                if (isTerminator(character)) {
+                    line.append(buffer, start, position - start);
+                    position++;
+                    // "\r\n" is a single terminator, even across a buffer refill
+                    if (character == '\r' && (position < limit || fill()) && buffer[position] == '\n') {
+                        position++;
+                    }
+                    terminated = true;
+                    return line.toString();
+                }
+                position++;
+            }
+            line.append(buffer, start, position - start);
+        }
+    }
+
+    /**
+     * Returns true if the last line read ended with a terminator, rather
+     * than with the end of the input.
+     */
+    boolean lineTerminated() {
+        return terminated;
+    }
+
+    private boolean fill() throws IOException {
+        int read;
+        do {
+            read = reader.read(buffer, 0, buffer.length);
+        } while (read == 0);
+
+        if (read < 0) {
+            position = 0;
+            limit = 0;
+            return false;
+        }
+        position = 0;
+        limit = read;
+        return true;
+    }
+
+    static boolean isTerminator(char character) {
+        return character == '\n' || character == '\r'
+                || character == '\u2028' || character == '\u2029' || character == '\u0085';
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,14 @@
+package textprocessor;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A source of input lines, read one at a time.
+ */
+interface LineSource extends Closeable {
+    /**
+     * Returns the next line without its terminator, or null at the end of the input.
+     */
+    String readLine() throws IOException;
+}
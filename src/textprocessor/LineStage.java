@@ -0,0 +1,27 @@
+package textprocessor;
+
+/**
+ * A single step of the processing pipeline, bound to its parameters
+ * when the {@link ProcessingPlan} is compiled.
+ */
+interface LineStage {
+    /**
+     * Applies the step to a line.
+     *
+     * @param line The line, without its terminator.
+     * @return The updated line, or null if the line is not kept.
+     */
+    String apply(String line);
+
+    /**
+     * Applies the step to a line, adding what it did to stats.
+     */
+    default String apply(String line, StatsRecorder stats) {
+        return apply(line);
+    }
+
+    /**
+     * Returns the phase the time of this step is recorded under.
+     */
+    ProcessingStats.Phase phase();
+}
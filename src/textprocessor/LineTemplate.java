@@ -0,0 +1,102 @@
+package textprocessor;
+
+import java.io.IOException;
+
+/**
+ * How a processed line is laid out in the output: the zero-padded line
+ * number and a space for -n, the line itself, then the -s suffix. -w
+ * strips the line after it is numbered, so it also removes the space,
+ * but not the suffix, which is added last.
+ *
+ * The template is compiled once with the plan. Writing a line through it
+ * puts the digits of the line number straight into the output buffer,
+ * next to the line and the suffix, so no String is built per line. Line
+ * numbers are longs, so files with more than 2^31 lines are numbered
+ * correctly. A template is immutable and can be shared between threads.
+ */
+final class LineTemplate {
+    /** The widest padding, which fits every long line number. */
+    static final int MAX_PADDING = 19;
+
+    private final int padding;
+    private final String separator;
+    private final String suffix;
+
+    /**
+     * @param padding The minimum number of digits of the line number, or 0 for no line number.
+     * @param suffix The suffix, or "" for none.
+     */
+    LineTemplate(int padding, String suffix) {
+        this(padding, false, suffix);
+    }
+
+    /**
+     * @param padding The minimum number of digits of the line number, or 0 for no line number.
+     * @param stripsWhitespace True for -w, which leaves no space after the line number.
+     * @param suffix The suffix, or "" for none.
+     */
+    LineTemplate(int padding, boolean stripsWhitespace, String suffix) {
+        this.padding = padding;
+        this.separator = stripsWhitespace ? "" : " ";
+        this.suffix = suffix;
+    }
+
+    /**
+     * Returns true if the template adds nothing to the line.
+     */
+    boolean isEmpty() {
+        return padding == 0 && suffix.isEmpty();
+    }
+
+    /**
+     * Writes a line through the template, followed by System.lineSeparator().
+     */
+    void writeLine(OutputSink out, String line, long lineNumber) throws IOException {
+        if (padding > 0) {
+            out.writePadded(lineNumber, padding);
+            out.write(separator);
+        }
+        if (suffix.isEmpty()) {
+            out.writeLine(line);
+        } else {
+            out.write(line);
+            out.writeLine(suffix);
+        }
+    }
+
+    /**
+     * Appends a line laid out by the template, without a line separator.
+     */
+    void appendTo(StringBuilder output, String line, long lineNumber) {
+        if (padding > 0) {
+            for (int i = digits(lineNumber); i < padding; i++) {
+                output.append('0');
+            }
+            output.append(lineNumber).append(separator);
+        }
+        output.append(line).append(suffix);
+    }
+
+    /**
+     * Returns a line laid out by the template.
+     */
+    String apply(String line, long lineNumber) {
+        if (isEmpty()) {
+            return line;
+        }
+        StringBuilder output = new StringBuilder(padding + 1 + line.length() + suffix.length());
+        appendTo(output, line, lineNumber);
+        return output.toString();
+    }
+
+    /**
+     * Returns the number of decimal digits of a number that is not negative.
+     */
+    static int digits(long number) {
+        int digits = 1;
+        for (long limit = 10; digits < MAX_PADDING && number >= limit; limit *= 10) {
+            digits++;
+        }
+        return digits;
+    }
+}
@@ -0,0 +1,79 @@
+package textprocessor;
+
+/**
+ * Replaces occurrences of a literal string in a line, without regular
+ * expressions.
+ *
+ * Occurrences are found with {@link String#indexOf(String, int)}, or
+ * with a {@link CaseInsensitiveMatcher} when case-insensitive, and the
+ * new string is spliced in with a pre-sized StringBuilder. Both strings
+ * are taken literally: no character of either has a special meaning.
+ * A line without a replaced occurrence is returned as it is.
+ */
+final class LiteralReplacer {
+    /** Replace every occurrence instead of a single one. */
+    static final int ALL = 0;
+
+    private final String oldString;
+    private final String newString;
+    private final CaseInsensitiveMatcher matcher;
+    private final int occurrence;
+
+    /**
+     * @param occurrence Which occurrence to replace, starting from 1, or {@link #ALL}.
+     */
+    LiteralReplacer(String oldString, String newString, boolean caseInsensitive, int occurrence) {
+        this.oldString = oldString;
+        this.newString = newString;
+        this.matcher = caseInsensitive ? new CaseInsensitiveMatcher(oldString) : null;
+        this.occurrence = occurrence;
+    }
+
+    String replace(String line) {
+        return replace(line, null);
+    }
+
+    /**
+     * Replaces the chosen occurrences, adding how many were replaced to
+     * stats unless it is null.
+     */
+    String replace(String line, StatsRecorder stats) {
+        int length = oldString.length();
+        StringBuilder builder = null;
+        int copied = 0;
+        int count = 0;
+
+        // occurrences do not overlap; an empty old string occurs between every two characters
+        int index = find(line, 0);
+        while (index >= 0) {
+            count++;
+            if (occurrence == ALL || count == occurrence) {
+                if (builder == null) {
+                    builder = new StringBuilder(line.length() + Math.max(newString.length() - length, 0));
+                }
+                builder.append(line, copied, index).append(newString);
+                copied = index + length;
+                if (occurrence != ALL) {
+                    break;
+                }
+            }
+            int next = index + Math.max(length, 1);
+            if (next > line.length()) {
+                break;
+            }
+            index = find(line, next);
+        }
+
+        if (builder == null) {
+            return line;
+        }
+        if (stats != null) {
+            stats.replacements += occurrence == ALL ? count : 1;
+        }
+        return builder.append(line, copied, line.length()).toString();
+    }
+
+    private int find(String line, int from) {
+        return matcher == null ? line.indexOf(oldString, from) : matcher.indexOf(line, from);
+    }
+}
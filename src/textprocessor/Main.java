@@ -1,228 +1,212 @@
 package textprocessor;
 
 import java.io.*;
-import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Scanner;
 import java.util.HashMap;
 import java.util.Iterator;
-
-import static java.util.regex.Pattern.quote;
+import java.util.Map;
+import java.util.Properties;
 
 public class Main {
     public static void main(String[] args) {
-        ArrayList<String> fileLines = new ArrayList<>();
-        ArrayList<String> updatedLines = new ArrayList<>();
+        run(args, Path.of(""), commandLineSettings(), System.in, System.out, System.err);
+    }
+
+    /*
+     * The textprocessor.* system properties that tune a run, with line
+     * buffering turned on when a person is watching the terminal.
+     */
+    static Properties commandLineSettings() {
+        Properties settings = new Properties();
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith("textprocessor.")) {
+                settings.setProperty(name, System.getProperty(name));
+            }
+        }
+        if (System.console() != null) {
+            settings.setProperty("textprocessor.lineBuffered", "true");
+        }
+        return settings;
+    }
+
+    /*
+     * Runs one command line, as main does, for the daemon: relative file
+     * names are resolved against workingDirectory, the tuning properties
+     * come from settings, the input file "-" reads in, and the output goes
+     * to out and err.
+     */
+    static void run(String[] args, Path workingDirectory, Properties settings, InputStream in, PrintStream out,
+                    PrintStream err) {
         ArrayList<String> arguments = new ArrayList<>(Arrays.asList(args));
+        ArrayList<String> inputs = new ArrayList<>();
         HashMap<String, String> actionsMap;
-        String outFileName = "";
-        boolean outToFile = false;
-        boolean caseInsensitive = false;
 
         // if there are arguments, populate the hashmap
         if (arguments.size() > 0) {
-            actionsMap = parseArguments(arguments);
+            actionsMap = parseArguments(arguments, inputs);
             if (actionsMap.get("error").equals("true")){
-                usage();
+                usage(err);
                 return;
             }
         } else {
-            usage();
+            usage(err);
             return;
         }
 
         // basic eval checks
-        if (!validateArguments(actionsMap)) {
-            usage();
+        if (!validateArguments(actionsMap, settings)) {
+            usage(err);
             return;
         }
 
-        // get the last argument as the input file and place the lines in an array
+        // the library does the processing, so the command line and the API give the same output
         try {
-            File inFile = new File(actionsMap.get("inFilename"));
-            if (inFile.length() > 0) {
-                // Check for newline at the end of file
-                byte[] fileBytes = Files.readAllBytes(inFile.toPath());
-                byte[] lineSeps = System.lineSeparator().getBytes();
-                String lastElement = String.valueOf(fileBytes[fileBytes.length - 1]);
-                String newline = String.valueOf(lineSeps[lineSeps.length - 1]);
-                if (!lastElement.equals(newline)){
-                    usage();
-                    return;
-                }
+            TextProcessor processor = createProcessor(actionsMap, workingDirectory, settings, in, out);
+            if (isBatch(actionsMap)) {
+                processBatch(processor, actionsMap.get("filename"), inputs, workingDirectory, settings, err);
+            } else if (isSet(settings, "textprocessor.stats")) {
+                err.println(processor.textprocessorWithStats());
+            } else {
+                processor.textprocessor();
             }
-            // read the file lines
-            Scanner fileReader = new Scanner(inFile);
-            while (fileReader.hasNextLine()) {
-                fileLines.add(fileReader.nextLine());
-            }
-            fileReader.close();
-
-        } catch (IOException e) {
-            usage();
+        } catch (TextProcessorException | IOException e) {
+            usage(err);
         }
+    }
 
-        // -o Flag
-        if (actionsMap.get("o").equals("present")) {
-            outToFile = true;
-            // if the output file is blank or the empty string, throw an error
-            if (actionsMap.get("filename").equals(" ") || actionsMap.get("filename").equals("")) {
-                usage();
-                return;
-            }
-            // if the output file is the input file, throw an error
-            if (actionsMap.get("filename").equals(actionsMap.get("inFilename"))) {
-                usage();
-                return;
-            }
-            outFileName = actionsMap.get("filename");;
-            // create the output file
-            try {
-                File outFile = new File(outFileName);
-                if (!outFile.createNewFile()) {
-                    usage(); // if the file already exists
-                }
-            } catch (IOException e) {
-                usage();
-                return;
-            }
-        }
+    private static boolean isSet(Properties settings, String name) {
+        return Boolean.parseBoolean(settings.getProperty(name));
+    }
 
-        // -i Flag
-        if (actionsMap.get("i").equals("present")) {
-            caseInsensitive = true;
+    private static String resolve(Path workingDirectory, String file) {
+        // names that are not valid paths are kept, and fail later like any missing file
+        if (file.equals("-")) {
+            // the standard input
+            return file;
+        }
+        try {
+            return workingDirectory.isAbsolute() ? workingDirectory.resolve(file).toString() : file;
+        } catch (InvalidPathException e) {
+            return file;
         }
+    }
 
-        // For each line in the file, check if the flags are provided and perform the appropriate operations
-        for (String line: fileLines) {
-            String newLine = line;
-            updatedLines.add(line);
-
-            // -k Flag
-            if (actionsMap.get("k").equals("present")) {
-                String substring = actionsMap.get("substring");
-                String lowerSubstring = substring.toLowerCase();
-                String lowerLine = line.toLowerCase();
-
-                if (caseInsensitive) {
-                    if (!(lowerLine.contains(lowerSubstring))) {
-                        updatedLines.remove(line);
-                        continue;
-                    }
-                } else {
-                    if (!(line.contains(substring))) {
-                        updatedLines.remove(line);
-                        continue;
-                    }
-                }
-            }
+    /*
+     * Many input files (or a directory or glob) are processed in one run when
+     * the -o file name is a template, such as "out/{name}.txt".
+     */
+    private static boolean isBatch(HashMap<String, String> actionsMap) {
+        return actionsMap.get("o").equals("present") && BatchProcessor.isTemplate(actionsMap.get("filename"));
+    }
 
-            // -r Flag
-            if (actionsMap.get("r").equals("present")) {
-                String oldString = actionsMap.get("oldString");
-                String newString = actionsMap.get("newString");
-                String lowerOld = oldString.toLowerCase();
-                String lowerLine = line.toLowerCase();
-
-                //  catch error if parameters are missing entirely
-                if (oldString.equals(actionsMap.get("inFilename")) || newString.equals(actionsMap.get("inFilename"))) {
-                    usage();
-                    return;
-                }
+    private static void processBatch(TextProcessor processor, String outputTemplate, ArrayList<String> inputs,
+                                     Path workingDirectory, Properties settings, PrintStream err)
+            throws TextProcessorException {
+        BatchProcessor batch = new BatchProcessor(processor, resolve(workingDirectory, outputTemplate));
+        try {
+            int concurrency = Integer.parseInt(settings.getProperty("textprocessor.batchConcurrency", "0"));
+            if (concurrency > 0) {
+                batch.setConcurrency(concurrency);
+            }
+        } catch (NumberFormatException e) {
+            // the default is used, as Integer.getInteger would
+        }
 
-                // catch error of blank old/new string
-                if (oldString.equals("") || newString.equals("")) {
-                    usage();
-                    return;
-                }
+        ArrayList<String> resolvedInputs = new ArrayList<>();
+        for (String input : inputs) {
+            resolvedInputs.add(resolve(workingDirectory, input));
+        }
 
-                if (caseInsensitive) {
-                    if (lowerLine.contains(lowerOld)) {
-                        newLine = newLine.replaceFirst("(?i)" + quote(oldString), newString);
-                    }
-                } else {
-                    if (line.contains(oldString)) {
-                        newLine = newLine.replaceFirst(oldString, newString);
-                    }
-                }
+        // the other files are still processed when one fails, and are named as they were given
+        for (Map.Entry<Path, TextProcessorException> failure : batch.process(resolvedInputs).entrySet()) {
+            Path file = failure.getKey();
+            if (workingDirectory.isAbsolute() && file.startsWith(workingDirectory)) {
+                file = workingDirectory.relativize(file);
             }
+            err.println(file + ": " + failure.getValue().getMessage());
+        }
+    }
 
-            // -n Flag
-            if (actionsMap.get("n").equals("present")) {
-                String paddingValue = actionsMap.get("padding");
-                int testerValue;
-
-                //  catch error if parameters are missing entirely
-                if (paddingValue.equals(actionsMap.get("inFilename"))) {
-                    usage();
-                    return;
-                }
+    /*
+     * Configures a TextProcessor with the actions given on the command line.
+     */
+    private static TextProcessor createProcessor(HashMap<String, String> actionsMap, Path workingDirectory,
+                                                 Properties settings, InputStream in, PrintStream out)
+            throws IOException {
+        TextProcessor processor = new TextProcessor();
+        processor.setFilepath(resolve(workingDirectory, actionsMap.get("inFilename")));
+        processor.setStandardInput(in);
+        processor.setStandardOutput(out);
+        processor.setMemoryMapped(isSet(settings, "textprocessor.mmap"));
+        processor.setWidePadding(isSet(settings, "textprocessor.widePadding"));
+        processor.setLineBuffered(isSet(settings, "textprocessor.lineBuffered"));
+        processor.setIncremental(isSet(settings, "textprocessor.incremental"));
+
+        // -f Flag
+        if (actionsMap.get("f").equals("present")) {
+            processor.setFollow(true);
+        }
 
-                // check if the padding value is not an integer
-                try {
-                    testerValue = Integer.parseInt(paddingValue);
-                } catch (NumberFormatException e) {
-                    usage();
-                    return;
-                }
+        // -o Flag
+        if (actionsMap.get("o").equals("present")) {
+            processor.setOutputFile(resolve(workingDirectory, actionsMap.get("filename")));
+        }
 
-                // check if the padding is within the appropriate values
-                if (testerValue > 9 || testerValue < 1) {
-                    usage();
-                    return;
-                }
+        // -i Flag
+        if (actionsMap.get("i").equals("present")) {
+            processor.setCaseInsensitive(true);
+        }
 
-                String paddingFormatter = "%0" + paddingValue + "d";
-                newLine = String.format(paddingFormatter, fileLines.indexOf(line) + 1) + " " + newLine;
+        // -k and -K Flags
+        if (actionsMap.get("k").equals("present")) {
+            if (actionsMap.get("patternsFile").equals("")) {
+                processor.setKeepLines(actionsMap.get("substring"));
+            } else {
+                processor.setKeepLines(readPatterns(resolve(workingDirectory, actionsMap.get("patternsFile"))));
             }
+        }
 
-            // -w Flag
-            if (actionsMap.get("w").equals("present")) {
-                newLine = newLine.replaceAll("\\s", "");
-            }
+        // -r Flag
+        if (actionsMap.get("r").equals("present")) {
+            processor.setReplaceText(actionsMap.get("oldString"), actionsMap.get("newString"));
+        }
 
-            // -s Flag
-            if (actionsMap.get("s").equals("present")) {
-                String suffix = actionsMap.get("suffix");
+        // -n Flag
+        if (actionsMap.get("n").equals("present")) {
+            processor.setAddPaddedLineNumber(Integer.parseInt(actionsMap.get("padding")));
+        }
 
-                //  catch error if parameters are missing entirely
-                // if (suffix.equals(inputFileName)) {
-                //    usage();
-                //     return;
-                //  }
+        // -w Flag
+        if (actionsMap.get("w").equals("present")) {
+            processor.setRemoveWhitespace(true);
+        }
 
-                // check if suffix is an empty string
-                if (suffix.equals("")) {
-                    usage();
-                    return;
-                }
-                newLine = newLine + suffix;
-            }
-            // add the changes to the output list
-            updatedLines.set(updatedLines.indexOf(line), newLine);
+        // -s Flag
+        if (actionsMap.get("s").equals("present")) {
+            processor.setSuffixLines(actionsMap.get("suffix"));
         }
 
-        // file out
-        if (outToFile) {
-            try {
-                FileWriter fw = new FileWriter(outFileName);
-                for (String updatedLine : updatedLines) {
-                    fw.write(updatedLine + System.lineSeparator());
+        return processor;
+    }
+
+    private static ArrayList<String> readPatterns(String patternsFile) throws IOException {
+        ArrayList<String> patterns = new ArrayList<>();
+        try (LineSource reader = TextProcessor.openLineSource(new File(patternsFile), false)) {
+            String pattern;
+            while ((pattern = reader.readLine()) != null) {
+                // a blank line would match every line
+                if (!pattern.isEmpty()) {
+                    patterns.add(pattern);
                 }
-                fw.close();
-            } catch (IOException e) {
-                usage();
-            }
-            // stdout
-        } else {
-            for (String updatedLine: updatedLines) {
-                System.out.println(updatedLine);
             }
         }
+        return patterns;
     }
 
-    private static boolean validateArguments(HashMap<String, String> actionsMap){
+    private static boolean validateArguments(HashMap<String, String> actionsMap, Properties settings){
         // i without k or r
         if (actionsMap.get("i").equals("present")){
             if (actionsMap.get("k").equals("") && actionsMap.get("r").equals("")) {
@@ -235,11 +219,74 @@ public class Main {
         } else if (actionsMap.get("k").equals("present") && actionsMap.get("r").equals("present")) {
             return false;
         }
+
+        // -o Flag
+        if (actionsMap.get("o").equals("present")) {
+            // if the output file is blank or the empty string, throw an error
+            if (actionsMap.get("filename").equals(" ") || actionsMap.get("filename").equals("")) {
+                return false;
+            }
+            // if the output file is the input file, throw an error
+            if (actionsMap.get("filename").equals(actionsMap.get("inFilename"))) {
+                return false;
+            }
+        }
+
+        // -r Flag
+        if (actionsMap.get("r").equals("present")) {
+            String oldString = actionsMap.get("oldString");
+            String newString = actionsMap.get("newString");
+
+            //  catch error if parameters are missing entirely
+            if (oldString.equals(actionsMap.get("inFilename")) || newString.equals(actionsMap.get("inFilename"))) {
+                return false;
+            }
+
+            // catch error of blank old/new string
+            if (oldString.equals("") || newString.equals("")) {
+                return false;
+            }
+        }
+
+        // -n Flag
+        if (actionsMap.get("n").equals("present")) {
+            String paddingValue = actionsMap.get("padding");
+
+            //  catch error if parameters are missing entirely
+            if (paddingValue.equals(actionsMap.get("inFilename"))) {
+                return false;
+            }
+
+            // check if the padding value is not an integer
+            int testerValue;
+            try {
+                testerValue = Integer.parseInt(paddingValue);
+            } catch (NumberFormatException e) {
+                return false;
+            }
+
+            // check if the padding is within the appropriate values
+            int maxPadding = isSet(settings, "textprocessor.widePadding")
+                    ? TextProcessor.MAX_WIDE_PADDING : TextProcessor.MAX_PADDING;
+            if (testerValue > maxPadding || testerValue < 1) {
+                return false;
+            }
+        }
+
+        // -s Flag: check if suffix is an empty string
+        if (actionsMap.get("s").equals("present") && actionsMap.get("suffix").equals("")) {
+            return false;
+        }
+
         // no errors
         return true;
     }
 
-    private static HashMap<String, String> parseArguments(ArrayList<String> arguments) {
+    /*
+     * The input files are the last argument, and in batch mode any other
+     * argument that is not an option; they are added to inputs.
+     */
+    private static HashMap<String, String> parseArguments(ArrayList<String> arguments, ArrayList<String> inputs) {
         HashMap<String, String> actionsMap = new HashMap<>();
         String inFileName = arguments.get(arguments.size() - 1);
         Iterator<String> iter = arguments.listIterator();
@@ -251,9 +298,11 @@ public class Main {
         actionsMap.put("n", "");
         actionsMap.put("w", "");
         actionsMap.put("s", "");
+        actionsMap.put("f", "");
         actionsMap.put("inFilename", inFileName);
         actionsMap.put("outFilename", "");
         actionsMap.put("substring", "");
+        actionsMap.put("patternsFile", "");
         actionsMap.put("oldString", "");
         actionsMap.put("newString", "");
         actionsMap.put("suffix", "");
@@ -333,6 +382,28 @@ public class Main {
                     iter.remove();
                     String substring = iter.next();
                     actionsMap.put("substring", substring);
+                    actionsMap.put("patternsFile", "");
+                    iter.remove();
+
+                    break;
+
+                case "-K":
+                    // if the flag has not been set, set the flag
+                    if (!actionsMap.get("k").equals("present")) {
+                        actionsMap.put("k", "present");
+                    }
+
+                    /*
+                    remove the item from the arguments list
+                    capture the patterns file as the next element
+                    add the patterns file to the hashmap
+                    remove the patterns file from the arguments list
+                    break the switch statement
+                    */
+
+                    iter.remove();
+                    String patternsFile = iter.next();
+                    actionsMap.put("patternsFile", patternsFile);
                     iter.remove();
 
                     break;
@@ -386,17 +457,33 @@ public class Main {
                     iter.remove();
                     break;
 
+                case "-f":
+                    actionsMap.put("f", "present");
+                    iter.remove();
+                    break;
+
                 default:
-                    if (!arg.equals(inFileName)) {
+                    if (arg.startsWith("-") && !arg.equals(inFileName)) {
                         actionsMap.put("error", "true");
+                    } else {
+                        inputs.add(arg);
                     }
                     iter.remove();
                     break;
             }
         }
+
+        // several input files are only accepted in batch mode
+        if (inputs.size() > 1 && !isBatch(actionsMap)) {
+            actionsMap.put("error", "true");
+        }
+        // a batch ends, so its files cannot be followed
+        if (actionsMap.get("f").equals("present") && isBatch(actionsMap)) {
+            actionsMap.put("error", "true");
+        }
         return actionsMap;
     }
-    private static void usage() {
-        System.err.println("Usage: textprocessor [ -o filename | -i | -k substring | -r old new | -n padding | -w | -s suffix ] FILE");
+    private static void usage(PrintStream err) {
+        err.println("Usage: textprocessor [ -o filename | -i | -k substring | -r old new | -n padding | -w | -s suffix ] FILE");
     }
 }
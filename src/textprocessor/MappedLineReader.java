@@ -0,0 +1,280 @@
+package textprocessor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads lines from a memory-mapped file.
+ *
+ * Line boundaries are found by scanning the mapped bytes, and a line is
+ * only decoded into a String when it is asked for, so the file contents
+ * are never copied through a Reader. Files of any size are mapped one
+ * window at a time; a line that runs past the end of a window is picked
+ * up again by mapping the next window from the start of that line.
+ *
+ * A reader can also cover just a region of a file, which lets several
+ * readers work on newline-aligned chunks of the same file in parallel.
+ *
+ * Only charsets whose line terminators can be recognised byte by byte
+ * are supported (see {@link #supports}). The terminators are the same as
+ * in {@link LineReader}.
+ */
+class MappedLineReader implements LineSource {
+    static final long DEFAULT_WINDOW_SIZE = 256L * 1024 * 1024;
+
+    // how the non-ASCII terminators '\u0085', '\u2028' and '\u2029' are encoded
+    private static final int ASCII = 0;
+    private static final int LATIN1 = 1;
+    private static final int UTF8 = 2;
+
+    private final FileChannel channel;
+    private final boolean ownsChannel;
+    private final Charset charset;
+    private final int encoding;
+    // the bytes that start the non-ASCII terminators, where the scan has to stop
+    private final byte firstLead;
+    private final byte secondLead;
+    private final long end;
+    private long windowSize;
+
+    private MappedByteBuffer window;
+    private long windowStart;
+    private int position;
+    private int lineStart;
+    private int lineLength;
+    private int terminatorLength;
+    private byte[] bytes = new byte[256];
+
+    MappedLineReader(Path path, Charset charset) throws IOException {
+        this(path, charset, DEFAULT_WINDOW_SIZE);
+    }
+
+    MappedLineReader(Path path, Charset charset, long windowSize) throws IOException {
+        this(FileChannel.open(path, StandardOpenOption.READ), true, 0, -1, charset, windowSize);
+    }
+
+    /**
+     * Reads the lines between start and end of an open file, which must
+     * both be line boundaries. The channel is not closed with the reader.
+     */
+    MappedLineReader(FileChannel channel, long start, long end, Charset charset, long windowSize) throws IOException {
+        this(channel, false, start, end, charset, windowSize);
+    }
+
+    private MappedLineReader(FileChannel channel, boolean ownsChannel, long start, long end,
+                             Charset charset, long windowSize) throws IOException {
+        if (!supports(charset)) {
+            throw new IllegalArgumentException("Unsupported charset " + charset);
+        }
+        this.channel = channel;
+        this.ownsChannel = ownsChannel;
+        this.charset = charset;
+        this.encoding = charset.equals(StandardCharsets.UTF_8) ? UTF8
+                : charset.equals(StandardCharsets.ISO_8859_1) ? LATIN1 : ASCII;
+        this.firstLead = encoding == UTF8 ? (byte) 0xC2 : encoding == LATIN1 ? (byte) 0x85 : (byte) '\n';
+        this.secondLead = encoding == UTF8 ? (byte) 0xE2 : firstLead;
+        this.windowSize = Math.max(1, Math.min(windowSize, Integer.MAX_VALUE));
+        this.end = end < 0 ? channel.size() : end;
+        if (this.end > start) {
+            map(start);
+        }
+    }
+
+    static boolean supports(Charset charset) {
+        return charset.equals(StandardCharsets.UTF_8)
+                || charset.equals(StandardCharsets.ISO_8859_1)
+                || charset.equals(StandardCharsets.US_ASCII);
+    }
+
+    @Override
+    public String readLine() throws IOException {
+        return nextLine() ? line() : null;
+    }
+
+    /**
+     * Moves to the next line without decoding it.
+     *
+     * @return false at the end of the file.
+     */
+    boolean nextLine() throws IOException {
+        if (window == null || windowStart + position >= end) {
+            return false;
+        }
+
+        while (true) {
+            int limit = window.limit();
+            boolean lastWindow = windowStart + limit >= end;
+
+            int index = position;
+            while (index < limit) {
+                // skip straight to the next byte that may start a terminator
+                index = ScanKernels.SELECTED.indexOfLineBreak(window, index, limit, firstLead, secondLead);
+                if (index < 0) {
+                    index = limit;
+                    break;
+                }
+                byte value = window.get(index);
+                if (value == '\n') {
+                    return found(index, 1);
+                }
+                if (value == '\r') {
+                    if (index + 1 < limit) {
+                        return found(index, window.get(index + 1) == '\n' ? 2 : 1);
+                    }
+                    if (lastWindow) {
+                        return found(index, 1);
+                    }
+                    // "\r\n" may continue in the next window
+                    break;
+                }
+                if (value < 0 && encoding != ASCII) {
+                    int terminator = extendedTerminator(index, limit);
+                    if (terminator > 0) {
+                        return found(index, terminator);
+                    }
+                    if (terminator < 0 && !lastWindow) {
+                        // a multi-byte terminator may continue in the next window
+                        break;
+                    }
+                }
+                index++;
+            }
+
+            if (index >= limit && lastWindow) {
+                // a trailing line without a terminator is still a line
+                return found(limit, 0);
+            }
+
+            // the line runs past the window, so map the next window from its start
+            map(windowStart + position);
+        }
+    }
+
+    /**
+     * Returns the buffer holding the bytes of the current line.
+     */
+    ByteBuffer window() {
+        return window;
+    }
+
+    /**
+     * Returns the index of the current line in {@link #window()}.
+     */
+    int lineStart() {
+        return lineStart;
+    }
+
+    /**
+     * Returns the length in bytes of the current line, without its terminator.
+     */
+    int lineLength() {
+        return lineLength;
+    }
+
+    /**
+     * Returns the length in bytes of the terminator of the current line.
+     */
+    int terminatorLength() {
+        return terminatorLength;
+    }
+
+    /**
+     * Returns the position of the current line in the file.
+     */
+    long lineOffset() {
+        return windowStart + lineStart;
+    }
+
+    /**
+     * Returns the open channel of the file.
+     */
+    FileChannel channel() {
+        return channel;
+    }
+
+    /**
+     * Returns true if the bytes of the current line contain the needle of the searcher.
+     */
+    boolean lineContains(ByteSearcher searcher) {
+        return searcher.indexOf(window, lineStart, lineStart + lineLength) >= 0;
+    }
+
+    /**
+     * Decodes the current line.
+     */
+    String line() {
+        if (bytes.length < lineLength) {
+            bytes = new byte[Math.max(lineLength, bytes.length * 2)];
+        }
+        window.get(lineStart, bytes, 0, lineLength);
+        return new String(bytes, 0, lineLength, charset);
+    }
+
+    private boolean found(int terminatorStart, int terminatorLength) {
+        lineStart = position;
+        lineLength = terminatorStart - position;
+        this.terminatorLength = terminatorLength;
+        position = terminatorStart + terminatorLength;
+        return true;
+    }
+
+    /*
+     * Returns the length of the terminator starting at index, 0 if there
+     * is none, or -1 if the window ends before it can be told.
+     */
+    private int extendedTerminator(int index, int limit) {
+        byte value = window.get(index);
+        if (encoding == LATIN1) {
+            return value == (byte) 0x85 ? 1 : 0;
+        }
+
+        // UTF-8: '\u0085' is C2 85, '\u2028' is E2 80 A8 and '\u2029' is E2 80 A9
+        if (value == (byte) 0xC2) {
+            if (index + 1 >= limit) {
+                return -1;
+            }
+            return window.get(index + 1) == (byte) 0x85 ? 2 : 0;
+        }
+        if (value == (byte) 0xE2) {
+            if (index + 1 >= limit) {
+                return -1;
+            }
+            if (window.get(index + 1) != (byte) 0x80) {
+                return 0;
+            }
+            if (index + 2 >= limit) {
+                return -1;
+            }
+            byte last = window.get(index + 2);
+            return last == (byte) 0xA8 || last == (byte) 0xA9 ? 3 : 0;
+        }
+        return 0;
+    }
+
+    private void map(long offset) throws IOException {
+        if (window != null && offset == windowStart) {
+            // a single line is longer than the window, so the window has to grow
+            if (windowSize >= Integer.MAX_VALUE) {
+                throw new IOException("Line is too long to be mapped");
+            }
+            windowSize = Math.min(windowSize * 2, Integer.MAX_VALUE);
+        }
+        long length = Math.min(windowSize, end - offset);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        windowStart = offset;
+        position = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (ownsChannel) {
+            channel.close();
+        }
+    }
+}
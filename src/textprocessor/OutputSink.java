@@ -0,0 +1,55 @@
+package textprocessor;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Where the processed lines are written.
+ *
+ * Closing a sink flushes it; it only closes the underlying destination
+ * if the sink opened it.
+ */
+interface OutputSink extends Closeable, Flushable {
+    /**
+     * Writes a line followed by System.lineSeparator().
+     */
+    void writeLine(String line) throws IOException;
+
+    /**
+     * Writes text that already contains its line separators.
+     */
+    void write(String text) throws IOException;
+
+    /**
+     * Writes a number that is not negative in decimal, padded with leading
+     * zeros to at least width digits.
+     */
+    void writePadded(long number, int width) throws IOException;
+
+    /**
+     * Writes bytes that are already encoded in the default charset. The
+     * sink may refer to the bytes until it is flushed, so they must not
+     * change until then.
+     */
+    void writeBytes(ByteBuffer source, int start, int length) throws IOException;
+
+    /**
+     * Writes bytes that are already encoded in the default charset, copying
+     * them, so the array can be reused as soon as this returns.
+     */
+    void copyBytes(byte[] source, int start, int length) throws IOException;
+
+    /**
+     * Copies part of a file, which is already encoded in the default
+     * charset, straight to the output.
+     */
+    void transferFrom(FileChannel source, long position, long count) throws IOException;
+
+    /**
+     * Returns the number of bytes handed to the destination so far.
+     */
+    long bytesWritten();
+}
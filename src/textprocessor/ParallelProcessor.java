@@ -0,0 +1,291 @@
+package textprocessor;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Runs a {@link ProcessingPlan} over a large file on several threads.
+ *
+ * The file is split into chunks that end just after a '\n', so no line
+ * or terminator is ever split between two chunks. Each chunk is read with
+ * its own {@link MappedLineReader} and processed on a ForkJoinPool, and
+ * the processed chunks are handed back in their original order by
+ * {@link #nextChunk()}. Only a few chunks per thread are in flight at a
+ * time, so memory use stays bounded.
+ *
+ * When the plan numbers lines, the lines of every chunk are counted
+ * first (also in parallel), so that each chunk knows the number of its
+ * first line before it is processed.
+ *
+ * {@link IncrementalProcessor} hands it just the chunks of a file that
+ * have changed, with the numbers of their first lines.
+ *
+ * When statistics are recorded, each chunk has its own
+ * {@link StatsRecorder}, which is merged into the caller's when the chunk
+ * is handed back.
+ */
+final class ParallelProcessor implements Closeable {
+    static final long MIN_PARALLEL_SIZE = 8L * 1024 * 1024;
+    static final long CHUNK_SIZE = 4L * 1024 * 1024;
+    private static final int CHUNKS_PER_THREAD = 2;
+    private static final int SCAN_BUFFER_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+    private final ProcessingPlan plan;
+    private final ByteSearcher keepFilter;
+    private final Charset charset;
+    private final ForkJoinPool pool;
+    private final int inFlight;
+    private final List<long[]> chunks;
+    private final long[] firstLineNumbers;
+    private final StatsRecorder stats;
+    private final StatsRecorder[] chunkStats;
+    private final ArrayDeque<Future<String>> pending = new ArrayDeque<>();
+    private int nextChunk;
+    private int returnedChunks;
+
+    ParallelProcessor(Path path, ProcessingPlan plan, int threads) throws IOException {
+        this(path, plan, threads, CHUNK_SIZE, null);
+    }
+
+    ParallelProcessor(Path path, ProcessingPlan plan, int threads, StatsRecorder stats) throws IOException {
+        this(path, plan, threads, CHUNK_SIZE, stats);
+    }
+
+    ParallelProcessor(Path path, ProcessingPlan plan, int threads, long chunkSize) throws IOException {
+        this(path, plan, threads, chunkSize, null);
+    }
+
+    /**
+     * Unless stats is null, what every chunk does is added to it.
+     */
+    ParallelProcessor(Path path, ProcessingPlan plan, int threads, long chunkSize, StatsRecorder stats)
+            throws IOException {
+        this(path, plan, threads, null, chunkSize, null, stats);
+    }
+
+    /**
+     * Processes only the given chunks of a file, each {start, end} ending
+     * just after a '\n'. When the plan numbers lines, firstLineNumbers
+     * holds the number of lines before each chunk.
+     */
+    ParallelProcessor(Path path, ProcessingPlan plan, int threads, List<long[]> chunks, long[] firstLineNumbers,
+                      StatsRecorder stats) throws IOException {
+        this(path, plan, threads, chunks, 0, firstLineNumbers, stats);
+    }
+
+    private ParallelProcessor(Path path, ProcessingPlan plan, int threads, List<long[]> chunks, long chunkSize,
+                              long[] firstLineNumbers, StatsRecorder stats) throws IOException {
+        this.stats = stats;
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.plan = plan;
+        this.charset = Charset.defaultCharset();
+        this.keepFilter = plan.keepFilter(charset);
+        this.pool = new ForkJoinPool(threads);
+        this.inFlight = threads * CHUNKS_PER_THREAD;
+
+        try {
+            this.chunks = chunks == null ? split(chunkSize) : chunks;
+            this.firstLineNumbers = firstLineNumbers == null && plan.usesLineNumbers() ? countLines() : firstLineNumbers;
+            this.chunkStats = stats == null ? null : new StatsRecorder[this.chunks.size()];
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns true if a file is large enough for parallel processing to pay off.
+     */
+    static boolean isWorthwhile(File inFile, int threads) {
+        return threads > 1
+                && MappedLineReader.supports(Charset.defaultCharset())
+                && inFile.length() >= MIN_PARALLEL_SIZE;
+    }
+
+    /**
+     * Returns the processed lines of the next chunk, each followed by
+     * System.lineSeparator(), or null when every chunk has been returned.
+     */
+    String nextChunk() throws IOException {
+        // keep the pool busy with the chunks that come next
+        while (nextChunk < chunks.size() && pending.size() < inFlight) {
+            int index = nextChunk++;
+            pending.add(pool.submit(() -> processChunk(index)));
+        }
+
+        Future<String> result = pending.poll();
+        if (result == null) {
+            return null;
+        }
+        String chunk = await(result);
+        if (stats != null) {
+            stats.merge(chunkStats[returnedChunks]);
+            chunkStats[returnedChunks] = null;
+        }
+        returnedChunks++;
+        return chunk;
+    }
+
+    private String processChunk(int index) throws IOException {
+        long[] chunk = chunks.get(index);
+        String lineSeparator = System.lineSeparator();
+        LineTemplate template = plan.template();
+        StringBuilder output = new StringBuilder((int) Math.min(chunk[1] - chunk[0], Integer.MAX_VALUE - 8));
+        long firstLineNumber = firstLineNumbers == null ? 0 : firstLineNumbers[index];
+        long lineNumber = firstLineNumber;
+        long linesKept = 0;
+        ProcessingEvents.ChunkProcessed event = ProcessingEvents.beginChunk();
+        StatsRecorder stats = this.stats == null ? null : new StatsRecorder();
+        if (stats != null) {
+            stats.start();
+        }
+
+        try (MappedLineReader reader = new MappedLineReader(channel, chunk[0], chunk[1], charset, chunk[1] - chunk[0])) {
+            while (nextLine(reader, stats)) {
+                lineNumber++;
+                // lines without the -k substring are dropped before they are decoded
+                String updatedLine;
+                if (keepFilter == null) {
+                    updatedLine = plan.transform(reader.line(), stats);
+                } else if (reader.lineContains(keepFilter)) {
+                    if (stats != null) {
+                        stats.lap(ProcessingStats.Phase.KEEP);
+                    }
+                    updatedLine = plan.transformKept(reader.line(), stats);
+                } else {
+                    continue;
+                }
+                if (updatedLine != null) {
+                    template.appendTo(output, updatedLine, lineNumber);
+                    output.append(lineSeparator);
+                    linesKept++;
+                    if (stats != null) {
+                        stats.linesKept++;
+                        stats.lap(ProcessingStats.Phase.WRITE);
+                    }
+                }
+            }
+        }
+
+        if (stats != null) {
+            stats.stop();
+            chunkStats[index] = stats;
+        }
+        ProcessingEvents.endChunk(event, index, chunk[0], chunk[1] - chunk[0], lineNumber - firstLineNumber, linesKept);
+        return output.toString();
+    }
+
+    private static boolean nextLine(MappedLineReader reader, StatsRecorder stats) throws IOException {
+        if (stats == null) {
+            return reader.nextLine();
+        }
+        stats.beginLine();
+        boolean found = reader.nextLine();
+        if (found) {
+            stats.linesRead++;
+            stats.lap(ProcessingStats.Phase.READ);
+        }
+        return found;
+    }
+
+    /*
+     * Counts the lines of every chunk and turns the counts into the
+     * number of lines before each chunk.
+     */
+    private long[] countLines() throws IOException {
+        List<Future<Long>> counts = new ArrayList<>();
+        for (long[] chunk : chunks) {
+            counts.add(pool.submit(() -> countLines(channel, chunk, charset)));
+        }
+
+        long[] firstLineNumbers = new long[chunks.size()];
+        long linesBefore = 0;
+        for (int i = 0; i < counts.size(); i++) {
+            firstLineNumbers[i] = linesBefore;
+            linesBefore += await(counts.get(i));
+        }
+        return firstLineNumbers;
+    }
+
+    /**
+     * Returns the number of lines in a chunk of a file.
+     */
+    static long countLines(FileChannel channel, long[] chunk, Charset charset) throws IOException {
+        long count = 0;
+        try (MappedLineReader reader = new MappedLineReader(channel, chunk[0], chunk[1], charset, chunk[1] - chunk[0])) {
+            while (reader.nextLine()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /*
+     * Splits the file into chunks of about chunkSize bytes, each ending
+     * just after a '\n' (or at the end of the file).
+     */
+    private List<long[]> split(long chunkSize) throws IOException {
+        List<long[]> chunks = new ArrayList<>();
+        long size = channel.size();
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+
+        long start = 0;
+        while (start < size) {
+            long end = start + chunkSize >= size ? size : nextLineStart(start + chunkSize, size, buffer);
+            chunks.add(new long[] {start, end});
+            start = end;
+        }
+        return chunks;
+    }
+
+    private long nextLineStart(long from, long size, ByteBuffer buffer) throws IOException {
+        long offset = from;
+        while (offset < size) {
+            buffer.clear();
+            int read = channel.read(buffer, offset);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return offset + i + 1;
+                }
+            }
+            offset += read;
+        }
+        return size;
+    }
+
+    private static <T> T await(Future<T> result) throws IOException {
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        pool.shutdownNow();
+        channel.close();
+    }
+}
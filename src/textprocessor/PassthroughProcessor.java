@@ -0,0 +1,291 @@
+package textprocessor;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+/**
+ * Runs a {@link ProcessingPlan} on the bytes of the lines, copying them
+ * from the input to the output without decoding and encoding them again.
+ *
+ * That works for plans with only -k, -w and -s (see
+ * {@link ProcessingPlan#worksOnBytes()}). Each kept line is written as a
+ * slice of the mapped input, followed by one shared buffer holding the
+ * encoded suffix and line separator, so a {@link BufferedSink} writing to
+ * a file can send whole batches of lines with one gathering write. When
+ * there is no suffix and a line already ends with the line separator, the
+ * line and its terminator are a single slice. A plan with no stages at all
+ * copies runs of lines with {@link java.nio.channels.FileChannel#transferTo}.
+ * With -w, a line that has whitespace is compacted into a reusable array
+ * by {@link WhitespaceStripper} and copied from there.
+ *
+ * A line is only copied when decoding and encoding it would give back the
+ * same bytes; any other line, such as one with malformed input, goes
+ * through the plan as usual, so the output is the same either way.
+ */
+final class PassthroughProcessor implements Closeable {
+    private final MappedLineReader reader;
+    private final ProcessingPlan plan;
+    private final ByteSearcher keepFilter;
+    private final boolean filters;
+    private final boolean strips;
+    private final boolean identity;
+    private final Charset charset;
+    private final ByteBuffer ending;
+    private final byte[] separator;
+    private final boolean copiesTerminator;
+    private final StatsRecorder stats;
+    private long lineNumber;
+    private byte[] stripped = new byte[256];
+
+    // the run of lines waiting to be transferred, for a plan with no stages
+    private long runStart;
+    private long runEnd;
+
+    /**
+     * Unless stats is null, what is done with every line is added to it.
+     */
+    PassthroughProcessor(Path path, ProcessingPlan plan, StatsRecorder stats) throws IOException {
+        this.stats = stats;
+        this.charset = Charset.defaultCharset();
+        this.reader = new MappedLineReader(path, charset);
+        this.plan = plan;
+        this.keepFilter = plan.keepFilter(charset);
+        this.filters = !plan.keepsEveryLine();
+        this.strips = plan.stripsWhitespace();
+        this.identity = plan.isIdentity();
+
+        String suffix = plan.suffix() == null ? "" : plan.suffix();
+        this.separator = System.lineSeparator().getBytes(charset);
+        this.ending = ByteBuffer.wrap((suffix + System.lineSeparator()).getBytes(charset)).asReadOnlyBuffer();
+        this.copiesTerminator = suffix.isEmpty();
+    }
+
+    /**
+     * Returns true if the plan can run on bytes and the input can be read
+     * as bytes in the default charset.
+     */
+    static boolean isApplicable(ProcessingPlan plan) {
+        Charset charset = Charset.defaultCharset();
+        return plan.worksOnBytes()
+                && MappedLineReader.supports(charset)
+                && (plan.suffix() == null || charset.newEncoder().canEncode(plan.suffix()));
+    }
+
+    /**
+     * Returns true if the lines need work that several threads could share:
+     * removing whitespace, or decoding the lines to decide whether they are
+     * kept, for a -k that cannot search their bytes.
+     */
+    static boolean isCpuBound(ProcessingPlan plan) {
+        return plan.stripsWhitespace()
+                || (!plan.keepsEveryLine() && plan.keepFilter(Charset.defaultCharset()) == null);
+    }
+
+    /**
+     * Moves to the next line of the input.
+     *
+     * @return false at the end of the file.
+     */
+    boolean nextLine() throws IOException {
+        if (!reader.nextLine()) {
+            return false;
+        }
+        lineNumber++;
+        if (stats != null) {
+            stats.linesRead++;
+        }
+        return true;
+    }
+
+    /**
+     * Writes the current line to out if it is kept.
+     */
+    void writeLine(OutputSink out) throws IOException {
+        ByteBuffer window = reader.window();
+        int start = reader.lineStart();
+        int length = reader.lineLength();
+        boolean copied = isUnchangedByDecoding(window, start, start + length);
+
+        if (identity) {
+            if (copied && endsWithSeparator(window, start + length)) {
+                // extend the current run, which is copied as a whole later
+                long offset = reader.lineOffset();
+                if (offset != runEnd) {
+                    finish(out);
+                    runStart = offset;
+                }
+                runEnd = offset + length + reader.terminatorLength();
+                if (stats != null) {
+                    stats.linesKept++;
+                }
+                return;
+            }
+            finish(out);
+        }
+
+        if (!copied) {
+            // decode, process and encode the line as the other paths do
+            String updatedLine = keepFilter == null ? plan.transform(reader.line(), stats)
+                    : reader.lineContains(keepFilter) ? plan.transformKept(reader.line(), stats) : null;
+            if (updatedLine != null) {
+                plan.template().writeLine(out, updatedLine, lineNumber);
+                written();
+            }
+            return;
+        }
+
+        if (filters) {
+            boolean kept = keepFilter != null ? reader.lineContains(keepFilter) : plan.keeps(reader.line());
+            if (stats != null) {
+                stats.lap(ProcessingStats.Phase.KEEP);
+            }
+            if (!kept) {
+                return;
+            }
+        }
+
+        if (strips) {
+            if (stripped.length < length) {
+                stripped = new byte[Math.max(length, 2 * stripped.length)];
+            }
+            int count = WhitespaceStripper.strip(window, start, start + length, stripped);
+            if (stats != null) {
+                stats.lap(ProcessingStats.Phase.WHITESPACE);
+            }
+            if (count >= 0) {
+                out.copyBytes(stripped, 0, count);
+                out.writeBytes(ending, 0, ending.capacity());
+                written();
+                return;
+            }
+        }
+
+        if (copiesTerminator && endsWithSeparator(window, start + length)) {
+            out.writeBytes(window, start, length + separator.length);
+        } else {
+            out.writeBytes(window, start, length);
+            out.writeBytes(ending, 0, ending.capacity());
+        }
+        written();
+    }
+
+    /**
+     * Writes the lines that are still waiting to be copied.
+     */
+    void finish(OutputSink out) throws IOException {
+        if (runEnd > runStart) {
+            if (stats != null) {
+                stats.mark();
+            }
+            out.transferFrom(reader.channel(), runStart, runEnd - runStart);
+            if (stats != null) {
+                stats.measure(ProcessingStats.Phase.WRITE);
+            }
+        }
+        runStart = 0;
+        runEnd = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private void written() {
+        if (stats != null) {
+            stats.linesKept++;
+            stats.lap(ProcessingStats.Phase.WRITE);
+        }
+    }
+
+    private boolean endsWithSeparator(ByteBuffer window, int terminatorStart) {
+        if (reader.terminatorLength() != separator.length) {
+            return false;
+        }
+        for (int i = 0; i < separator.length; i++) {
+            if (window.get(terminatorStart + i) != separator[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * Returns true if the bytes decode without errors, so encoding the
+     * decoded line gives back the same bytes.
+     */
+    private boolean isUnchangedByDecoding(ByteBuffer window, int from, int to) {
+        if (charset.equals(StandardCharsets.ISO_8859_1)) {
+            return true;
+        }
+        if (charset.equals(StandardCharsets.UTF_8)) {
+            return isValidUtf8(window, from, to);
+        }
+        for (int i = from; i < to; i++) {
+            if (window.get(i) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if the bytes between from and to are well-formed UTF-8,
+     * as the JDK decoder defines it: no overlong forms, no surrogates and
+     * nothing above U+10FFFF.
+     */
+    static boolean isValidUtf8(ByteBuffer buffer, int from, int to) {
+        int index = from;
+        while (index < to) {
+            int lead = buffer.get(index) & 0xFF;
+            if (lead < 0x80) {
+                index++;
+                continue;
+            }
+
+            // the number of continuation bytes, and the range of the first one
+            int count;
+            int low = 0x80;
+            int high = 0xBF;
+            if (lead >= 0xC2 && lead <= 0xDF) {
+                count = 1;
+            } else if (lead >= 0xE0 && lead <= 0xEF) {
+                count = 2;
+                if (lead == 0xE0) {
+                    low = 0xA0;
+                } else if (lead == 0xED) {
+                    high = 0x9F;
+                }
+            } else if (lead >= 0xF0 && lead <= 0xF4) {
+                count = 3;
+                if (lead == 0xF0) {
+                    low = 0x90;
+                } else if (lead == 0xF4) {
+                    high = 0x8F;
+                }
+            } else {
+                return false;
+            }
+
+            if (index + count >= to) {
+                return false;
+            }
+            int second = buffer.get(index + 1) & 0xFF;
+            if (second < low || second > high) {
+                return false;
+            }
+            for (int i = 2; i <= count; i++) {
+                int next = buffer.get(index + i) & 0xFF;
+                if (next < 0x80 || next > 0xBF) {
+                    return false;
+                }
+            }
+            index += count + 1;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,272 @@
+package textprocessor;
+
+import java.io.File;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * The Java Flight Recorder events of the processing pipeline.
+ *
+ * The events are only created once the flight recorder has been started,
+ * by a -XX:StartFlightRecording option, jcmd or the API, so a run without
+ * a recording does not even load the flight recorder classes, which would
+ * slow down the start of short runs. After that, an event is only created
+ * while its type is enabled in the recording. Each event is begun and ended where
+ * the work is done, and its fields are only filled in when it is
+ * recorded. Recording the file and stage events turns on the
+ * {@link StatsRecorder} of the run, which counts the lines. The sample
+ * settings in jfr/textprocessor.jfc enable them all.
+ */
+final class ProcessingEvents {
+    private static final String CATEGORY = "Textfile Processor";
+
+    private ProcessingEvents() {
+    }
+
+    @Name("textprocessor.FileOpen")
+    @Label("File Open")
+    @Description("Opening (and mapping) the input file")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static final class FileOpen extends Event {
+        @Label("Path")
+        String path;
+
+        @Label("Size")
+        @DataAmount
+        long size;
+    }
+
+    @Name("textprocessor.FileRead")
+    @Label("File Read")
+    @Description("Reading, processing and writing the whole input file")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static final class FileRead extends Event {
+        @Label("Path")
+        String path;
+
+        @Label("Bytes Read")
+        @DataAmount
+        long bytesRead;
+
+        @Label("Lines Read")
+        long linesRead;
+
+        @Label("Lines Kept")
+        long linesKept;
+
+        @Label("Replacements")
+        long replacements;
+
+        @Label("Bytes Written")
+        @DataAmount
+        long bytesWritten;
+    }
+
+    @Name("textprocessor.Stage")
+    @Label("Stage")
+    @Description("The time a run spent in one phase, estimated from sampled lines")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static final class Stage extends Event {
+        @Label("Path")
+        String path;
+
+        @Label("Phase")
+        String phase;
+
+        @Label("Lines")
+        long lines;
+
+        @Label("Time")
+        @Timespan
+        long time;
+
+        @Label("CPU Time")
+        @Timespan
+        long cpuTime;
+    }
+
+    @Name("textprocessor.ChunkProcessed")
+    @Label("Chunk Processed")
+    @Description("A chunk of a large file processed on a worker thread")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static final class ChunkProcessed extends Event {
+        @Label("Chunk")
+        int chunk;
+
+        @Label("Offset")
+        @DataAmount
+        long offset;
+
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+
+        @Label("Lines")
+        long lines;
+
+        @Label("Lines Kept")
+        long linesKept;
+    }
+
+    @Name("textprocessor.OutputFlush")
+    @Label("Output Flush")
+    @Description("Handing buffered output to the output channel")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static final class OutputFlush extends Event {
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+    }
+
+    /*
+     * The types of the events, whose settings tell whether they are
+     * recorded. Only loaded once the flight recorder has been started.
+     */
+    private static final class Types {
+        static final EventType FILE_OPEN = EventType.getEventType(FileOpen.class);
+        static final EventType FILE_READ = EventType.getEventType(FileRead.class);
+        static final EventType STAGE = EventType.getEventType(Stage.class);
+        static final EventType CHUNK_PROCESSED = EventType.getEventType(ChunkProcessed.class);
+        static final EventType OUTPUT_FLUSH = EventType.getEventType(OutputFlush.class);
+    }
+
+    /**
+     * Returns whether the flight recorder has been started, and so whether
+     * events can be recorded.
+     */
+    static boolean isRecorderStarted() {
+        return FlightRecorder.isInitialized();
+    }
+
+    /**
+     * Returns whether the events that need the statistics of a run are
+     * recorded.
+     */
+    static boolean needStats() {
+        return isRecorderStarted() && (Types.FILE_READ.isEnabled() || Types.STAGE.isEnabled());
+    }
+
+    static FileOpen beginFileOpen() {
+        if (!isRecorderStarted() || !Types.FILE_OPEN.isEnabled()) {
+            return null;
+        }
+        FileOpen event = new FileOpen();
+        event.begin();
+        return event;
+    }
+
+    static void endFileOpen(FileOpen event, File file) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.path = file.getPath();
+            event.size = file.length();
+            event.commit();
+        }
+    }
+
+    static FileRead beginFileRead() {
+        if (!isRecorderStarted() || !Types.FILE_READ.isEnabled()) {
+            return null;
+        }
+        FileRead event = new FileRead();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends the event of a run, and records it and the time of each phase.
+     */
+    static void endFileRead(FileRead event, String path, ProcessingStats stats) {
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.path = path;
+                event.bytesRead = stats.getBytesRead();
+                event.linesRead = stats.getLinesRead();
+                event.linesKept = stats.getLinesKept();
+                event.replacements = stats.getReplacements();
+                event.bytesWritten = stats.getBytesWritten();
+                event.commit();
+            }
+        }
+
+        // the stages may be recorded without the file events
+        if (!isRecorderStarted() || !Types.STAGE.isEnabled()) {
+            return;
+        }
+        for (ProcessingStats.Phase phase : ProcessingStats.Phase.values()) {
+            Stage stage = new Stage();
+            if (stage.shouldCommit()) {
+                stage.path = path;
+                stage.phase = phase.name();
+                // every line is read and searched for -k, the kept lines go through the rest
+                boolean everyLine = phase == ProcessingStats.Phase.READ || phase == ProcessingStats.Phase.KEEP;
+                stage.lines = everyLine ? stats.getLinesRead() : stats.getLinesKept();
+                stage.time = stats.getWallNanos(phase);
+                stage.cpuTime = stats.getCpuNanos(phase);
+                stage.commit();
+            }
+        }
+    }
+
+    static ChunkProcessed beginChunk() {
+        if (!isRecorderStarted() || !Types.CHUNK_PROCESSED.isEnabled()) {
+            return null;
+        }
+        ChunkProcessed event = new ChunkProcessed();
+        event.begin();
+        return event;
+    }
+
+    static void endChunk(ChunkProcessed event, int chunk, long offset, long bytes, long lines, long linesKept) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.chunk = chunk;
+            event.offset = offset;
+            event.bytes = bytes;
+            event.lines = lines;
+            event.linesKept = linesKept;
+            event.commit();
+        }
+    }
+
+    static OutputFlush beginFlush() {
+        if (!isRecorderStarted() || !Types.OUTPUT_FLUSH.isEnabled()) {
+            return null;
+        }
+        OutputFlush event = new OutputFlush();
+        event.begin();
+        return event;
+    }
+
+    static void endFlush(OutputFlush event, long bytes) {
+        if (event == null || bytes == 0) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.bytes = bytes;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package textprocessor;
+
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * The -k, -r and -w actions compiled into a fixed list of stages, and the
+ * -n and -s actions compiled into a {@link LineTemplate}.
+ *
+ * A plan is built once from the configuration of a {@link TextProcessor}
+ * and holds everything the stages need (lowercased needles, compiled
+ * patterns, the output layout), so applying it to a line does no
+ * configuration lookups or parsing. A plan is immutable, apart from the
+ * scratch buffers each thread gets of its own: it can be applied to any
+ * number of files and shared between threads.
+ */
+final class ProcessingPlan {
+    private final LineStage[] stages;
+    private final LineTemplate template;
+    private final boolean numbered;
+    private final boolean keeping;
+    private final String suffix;
+    private final boolean stripsWhitespace;
+    private final boolean worksOnBytes;
+
+    private ProcessingPlan(LineStage[] stages, LineTemplate template, boolean numbered, boolean keeping,
+                           String suffix, boolean stripsWhitespace, boolean worksOnBytes) {
+        this.stages = stages;
+        this.template = template;
+        this.numbered = numbered;
+        this.keeping = keeping;
+        this.suffix = suffix;
+        this.stripsWhitespace = stripsWhitespace;
+        this.worksOnBytes = worksOnBytes;
+    }
+
+    /**
+     * Returns true if the output depends on the line numbers (-n).
+     */
+    boolean usesLineNumbers() {
+        return numbered;
+    }
+
+    /**
+     * Returns true if the plan can run on the bytes of the lines, without
+     * decoding them: a kept line is only stripped of whitespace and given
+     * the suffix. That is the case when the plan has no -r or -n stage.
+     */
+    boolean worksOnBytes() {
+        return worksOnBytes;
+    }
+
+    /**
+     * Returns true if the plan has a -w stage.
+     */
+    boolean stripsWhitespace() {
+        return stripsWhitespace;
+    }
+
+    /**
+     * Returns true if the plan has no stages and adds nothing to the lines.
+     */
+    boolean isIdentity() {
+        return stages.length == 0 && template.isEmpty();
+    }
+
+    /**
+     * Returns the layout of the output lines.
+     */
+    LineTemplate template() {
+        return template;
+    }
+
+    /**
+     * Returns the -s suffix, or null if there is none.
+     */
+    String suffix() {
+        return suffix;
+    }
+
+    /**
+     * Returns true if the plan has no -k stage.
+     */
+    boolean keepsEveryLine() {
+        return !keeping;
+    }
+
+    /**
+     * Returns true if the -k stage keeps the line, or if there is no -k stage.
+     */
+    boolean keeps(String line) {
+        return !keeping || stages[0].apply(line) != null;
+    }
+
+    /**
+     * Applies every stage of the plan to a line. The result still has to be
+     * laid out with the {@link #template()}.
+     *
+     * @param line The line, without its terminator.
+     * @return The updated line, or null if the line is not kept.
+     */
+    String transform(String line) {
+        String newLine = line;
+        for (LineStage stage : stages) {
+            newLine = stage.apply(newLine);
+            if (newLine == null) {
+                return null;
+            }
+        }
+        return newLine;
+    }
+
+    /**
+     * Applies every stage of the plan to a line like {@link #transform(String)},
+     * adding what the stages did and how long they took to stats.
+     */
+    String transform(String line, StatsRecorder stats) {
+        return stats == null ? transform(line) : transform(line, 0, stats);
+    }
+
+    /**
+     * Applies the stages after the -k stage like {@link #transformKept(String)},
+     * adding what the stages did and how long they took to stats.
+     */
+    String transformKept(String line, StatsRecorder stats) {
+        return stats == null ? transformKept(line) : transform(line, 1, stats);
+    }
+
+    private String transform(String line, int first, StatsRecorder stats) {
+        String newLine = line;
+        for (int i = first; i < stages.length; i++) {
+            newLine = stages[i].apply(newLine, stats);
+            stats.lap(stages[i].phase());
+            if (newLine == null) {
+                return null;
+            }
+        }
+        return newLine;
+    }
+
+    /**
+     * Applies the stages after the -k stage, to a line that is already
+     * known to contain the substring (see {@link #keepFilter}).
+     */
+    String transformKept(String line) {
+        String newLine = line;
+        for (int i = 1; i < stages.length; i++) {
+            newLine = stages[i].apply(newLine);
+            if (newLine == null) {
+                return null;
+            }
+        }
+        return newLine;
+    }
+
+    /**
+     * Returns a searcher for the encoded -k substring when lines can be kept
+     * or dropped by searching their bytes, before they are decoded. That is
+     * the case for a case-sensitive -k whose substring encodes to the same
+     * bytes it is decoded from in the given charset. Returns null otherwise.
+     */
+    ByteSearcher keepFilter(Charset charset) {
+        if (stages.length == 0 || !(stages[0] instanceof KeepStage)) {
+            return null;
+        }
+        KeepStage keep = (KeepStage) stages[0];
+        if (keep.caseInsensitive || !MappedLineReader.supports(charset)) {
+            return null;
+        }
+
+        // malformed input decodes to U+FFFD, which must not be matched on bytes
+        CharsetEncoder encoder = charset.newEncoder();
+        if (keep.substring.indexOf('\uFFFD') >= 0 || !encoder.canEncode(keep.substring)) {
+            return null;
+        }
+        return new ByteSearcher(keep.substring.getBytes(charset));
+    }
+
+    /*
+     * Builds the stages for the actions marked "present", in processing order.
+     * The parameters are expected to have been validated already. When
+     * keepPatterns is not null, -k keeps the lines containing any of them
+     * instead of the single substring.
+     */
+    static ProcessingPlan compile(HashMap<String, String> actionsMap, List<String> keepPatterns) {
+        ArrayList<LineStage> stages = new ArrayList<>();
+        boolean caseInsensitive = actionsMap.get("i").equals("present");
+
+        // -k Flag
+        if (actionsMap.get("k").equals("present")) {
+            if (keepPatterns == null) {
+                stages.add(new KeepStage(actionsMap.get("substring"), caseInsensitive));
+            } else if (keepPatterns.size() == 1) {
+                stages.add(new KeepStage(keepPatterns.get(0), caseInsensitive));
+            } else {
+                stages.add(new KeepAnyStage(new AhoCorasick(keepPatterns, caseInsensitive)));
+            }
+        }
+
+        // -r Flag
+        if (actionsMap.get("r").equals("present")) {
+            stages.add(new ReplaceStage(new LiteralReplacer(actionsMap.get("oldString"), actionsMap.get("newString"),
+                    caseInsensitive, Integer.parseInt(actionsMap.get("occurrence")))));
+        }
+
+        // -w Flag
+        if (actionsMap.get("w").equals("present")) {
+            stages.add(new WhitespaceStage());
+        }
+
+        // -n and -s Flags
+        int padding = actionsMap.get("n").equals("present") ? Integer.parseInt(actionsMap.get("padding")) : 0;
+        String suffix = actionsMap.get("s").equals("present") ? actionsMap.get("suffix") : "";
+        LineTemplate template = new LineTemplate(padding, actionsMap.get("w").equals("present"), suffix);
+
+        boolean worksOnBytes = actionsMap.get("r").equals("") && actionsMap.get("n").equals("");
+        return new ProcessingPlan(stages.toArray(new LineStage[0]), template, actionsMap.get("n").equals("present"),
+                actionsMap.get("k").equals("present"),
+                actionsMap.get("s").equals("present") ? actionsMap.get("suffix") : null,
+                actionsMap.get("w").equals("present"), worksOnBytes);
+    }
+
+    // -k: keep only the lines containing the substring
+    private static final class KeepStage implements LineStage {
+        private final String substring;
+        private final boolean caseInsensitive;
+        private final CaseInsensitiveMatcher matcher;
+
+        KeepStage(String substring, boolean caseInsensitive) {
+            this.substring = substring;
+            this.caseInsensitive = caseInsensitive;
+            this.matcher = caseInsensitive ? new CaseInsensitiveMatcher(substring) : null;
+        }
+
+        @Override
+        public ProcessingStats.Phase phase() {
+            return ProcessingStats.Phase.KEEP;
+        }
+
+        @Override
+        public String apply(String line) {
+            boolean found = caseInsensitive ? matcher.indexOf(line) >= 0 : line.contains(substring);
+            return found ? line : null;
+        }
+    }
+
+    // -k with several substrings: keep the lines containing any of them
+    private static final class KeepAnyStage implements LineStage {
+        private final AhoCorasick automaton;
+
+        KeepAnyStage(AhoCorasick automaton) {
+            this.automaton = automaton;
+        }
+
+        @Override
+        public ProcessingStats.Phase phase() {
+            return ProcessingStats.Phase.KEEP;
+        }
+
+        @Override
+        public String apply(String line) {
+            return automaton.matches(line) ? line : null;
+        }
+    }
+
+    // -r: replace the chosen instance of the old string with the new string
+    private static final class ReplaceStage implements LineStage {
+        private final LiteralReplacer replacer;
+
+        ReplaceStage(LiteralReplacer replacer) {
+            this.replacer = replacer;
+        }
+
+        @Override
+        public ProcessingStats.Phase phase() {
+            return ProcessingStats.Phase.REPLACE;
+        }
+
+        @Override
+        public String apply(String line) {
+            return replacer.replace(line);
+        }
+
+        @Override
+        public String apply(String line, StatsRecorder stats) {
+            return replacer.replace(line, stats);
+        }
+    }
+
+    // -w: remove all whitespace
+    private static final class WhitespaceStage implements LineStage {
+        // the plan is shared between threads, and each of them compacts its lines in a buffer of its own
+        private final ThreadLocal<WhitespaceStripper> strippers = ThreadLocal.withInitial(WhitespaceStripper::new);
+
+        @Override
+        public ProcessingStats.Phase phase() {
+            return ProcessingStats.Phase.WHITESPACE;
+        }
+
+        @Override
+        public String apply(String line) {
+            return strippers.get().strip(line);
+        }
+    }
+}
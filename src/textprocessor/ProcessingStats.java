@@ -0,0 +1,120 @@
+package textprocessor;
+
+import java.util.Locale;
+
+/**
+ * What a run of {@link TextProcessor#textprocessorWithStats()} did, and
+ * where its time went.
+ *
+ * The counts are exact. The time of each {@link Phase} is measured on the
+ * first {@link #SAMPLE_INTERVAL} lines, then on one line out of
+ * {@link #SAMPLE_INTERVAL} and scaled up, which keeps the cost low enough
+ * to leave on; the total times are measured exactly. CPU times
+ * are those of the threads that did the work, and are 0 if the JVM cannot
+ * measure thread CPU time.
+ */
+public final class ProcessingStats {
+    /** After the first lines, one line out of this many has its phases timed. */
+    public static final int SAMPLE_INTERVAL = StatsRecorder.SAMPLE_INTERVAL;
+
+    /**
+     * The steps every line goes through. The -n line number and the -s
+     * suffix are added while writing.
+     */
+    public enum Phase {
+        READ, KEEP, REPLACE, WHITESPACE, WRITE
+    }
+
+    private final long bytesRead;
+    private final long linesRead;
+    private final long linesKept;
+    private final long replacements;
+    private final long bytesWritten;
+    private final long wallNanos;
+    private final long cpuNanos;
+    private final long[] phaseWallNanos;
+    private final long[] phaseCpuNanos;
+
+    ProcessingStats(long bytesRead, long linesRead, long linesKept, long replacements, long bytesWritten,
+                    long wallNanos, long cpuNanos, long[] phaseWallNanos, long[] phaseCpuNanos) {
+        this.bytesRead = bytesRead;
+        this.linesRead = linesRead;
+        this.linesKept = linesKept;
+        this.replacements = replacements;
+        this.bytesWritten = bytesWritten;
+        this.wallNanos = wallNanos;
+        this.cpuNanos = cpuNanos;
+        this.phaseWallNanos = phaseWallNanos.clone();
+        this.phaseCpuNanos = phaseCpuNanos.clone();
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public long getLinesRead() {
+        return linesRead;
+    }
+
+    /**
+     * Returns the number of lines kept by -k, which are the lines written.
+     */
+    public long getLinesKept() {
+        return linesKept;
+    }
+
+    /**
+     * Returns the number of occurrences replaced by -r.
+     */
+    public long getReplacements() {
+        return replacements;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Returns the elapsed time of the whole run.
+     */
+    public long getWallNanos() {
+        return wallNanos;
+    }
+
+    /**
+     * Returns the CPU time of the whole run, over all the threads that took part.
+     */
+    public long getCpuNanos() {
+        return cpuNanos;
+    }
+
+    /**
+     * Returns the estimated elapsed time spent in a phase, summed over threads.
+     */
+    public long getWallNanos(Phase phase) {
+        return phaseWallNanos[phase.ordinal()];
+    }
+
+    /**
+     * Returns the estimated CPU time spent in a phase, summed over threads.
+     */
+    public long getCpuNanos(Phase phase) {
+        return phaseCpuNanos[phase.ordinal()];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder()
+                .append("read ").append(bytesRead).append(" bytes, ").append(linesRead).append(" lines; ")
+                .append("kept ").append(linesKept).append(" lines; ")
+                .append("replaced ").append(replacements).append("; ")
+                .append("wrote ").append(bytesWritten).append(" bytes; ")
+                .append("wall ").append(wallNanos / 1_000_000).append(" ms, cpu ").append(cpuNanos / 1_000_000).append(" ms");
+        for (Phase phase : Phase.values()) {
+            text.append("; ").append(phase.name().toLowerCase(Locale.ROOT))
+                    .append(" ~").append(getWallNanos(phase) / 1_000_000).append("/")
+                    .append(getCpuNanos(phase) / 1_000_000).append(" ms");
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,138 @@
+package textprocessor;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the output of recent runs in memory, so that running the same
+ * configuration over the same file again only writes the output.
+ *
+ * A result is found by the identity of the input file (its absolute
+ * path, file key, size and modification time) and the options of the
+ * run, but not where the output goes. Changing the file changes its
+ * modification time, so a result is never used for another version of
+ * the file; a file rewritten with the same size within the precision of
+ * the file system's timestamps cannot be told apart.
+ *
+ * The cache holds at most {@link #getMaxBytes()} bytes of output, and the
+ * results used least recently are evicted first. Outputs larger than
+ * that are never kept. One cache can be shared by many
+ * {@link TextProcessor}s, on any threads.
+ */
+public final class ResultCache {
+    private final long maxBytes;
+    private final LinkedHashMap<String, byte[]> results = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param maxBytes The most output kept, at least 1.
+     */
+    public ResultCache(long maxBytes) {
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException("maxBytes must be at least 1");
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Returns the number of bytes of output kept.
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Returns the number of results kept.
+     */
+    public synchronized int size() {
+        return results.size();
+    }
+
+    /**
+     * Returns the number of runs whose output was found in the cache.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of runs that processed their file.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Returns the number of results evicted to stay within the budget.
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Drops every result, but not the counts.
+     */
+    public synchronized void clear() {
+        results.clear();
+        bytes = 0;
+    }
+
+    /**
+     * Returns the key of a run over the current version of a file.
+     *
+     * @throws IOException If the file cannot be read.
+     */
+    static String key(Path file, String configuration) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        if (!attributes.isRegularFile()) {
+            throw new IOException(file + " is not a file");
+        }
+        return file.toAbsolutePath() + "\n" + attributes.fileKey() + "\n" + attributes.size() + "\n"
+                + attributes.lastModifiedTime().toInstant() + "\n" + configuration;
+    }
+
+    /**
+     * Returns the output of a run, or null if it is not kept.
+     */
+    synchronized byte[] get(String key) {
+        byte[] output = results.get(key);
+        if (output == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return output;
+    }
+
+    /**
+     * Keeps the output of a run, evicting the results used least recently
+     * to make room for it.
+     */
+    synchronized void put(String key, byte[] output) {
+        if (output.length > maxBytes) {
+            return;
+        }
+        byte[] previous = results.put(key, output);
+        bytes += output.length - (previous == null ? 0 : previous.length);
+
+        Iterator<Map.Entry<String, byte[]>> eldest = results.entrySet().iterator();
+        while (bytes > maxBytes) {
+            byte[] evicted = eldest.next().getValue();
+            eldest.remove();
+            bytes -= evicted.length;
+            evictions++;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package textprocessor;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The {@link ScanKernels} that look at one byte at a time, and work on
+ * every JVM.
+ */
+final class ScalarKernels implements ScanKernels {
+    static final String SIMD_PROPERTY = "textprocessor.simd";
+    private static final String VECTOR_KERNELS = "textprocessor.VectorKernels";
+
+    /*
+     * Returns the vector kernels if they were asked for and can be loaded,
+     * and the scalar ones otherwise.
+     */
+    static ScanKernels select() {
+        if (Boolean.getBoolean(SIMD_PROPERTY)) {
+            ScanKernels vector = loadVectorKernels();
+            if (vector != null) {
+                return vector;
+            }
+        }
+        return new ScalarKernels();
+    }
+
+    /**
+     * Returns the vector kernels, or null if the jdk.incubator.vector
+     * module is not available (it has to be added with
+     * --add-modules jdk.incubator.vector).
+     */
+    static ScanKernels loadVectorKernels() {
+        try {
+            // loaded by name, so that nothing else links against the incubator module
+            return (ScanKernels) Class.forName(VECTOR_KERNELS).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    @Override
+    public boolean isVectorized() {
+        return false;
+    }
+
+    @Override
+    public int indexOfLineBreak(ByteBuffer buffer, int from, int to, byte first, byte second) {
+        for (int i = from; i < to; i++) {
+            byte value = buffer.get(i);
+            if (value == '\n' || value == '\r' || value == first || value == second) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int indexOf(ByteBuffer buffer, int from, int to, byte value) {
+        for (int i = from; i < to; i++) {
+            if (buffer.get(i) == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int indexOfWhitespace(ByteBuffer buffer, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (WhitespaceStripper.isWhitespace(buffer.get(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,46 @@
+package textprocessor;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The byte scans that most of the processing time goes into: finding line
+ * terminators for {@link MappedLineReader}, finding the first byte of the
+ * -k substring for {@link ByteSearcher} and finding whitespace for
+ * {@link WhitespaceStripper}.
+ *
+ * {@link ScalarKernels} looks at one byte at a time. With
+ * -Dtextprocessor.simd=true and the jdk.incubator.vector module
+ * available, {@link #SELECTED} is {@link VectorKernels}, which looks at
+ * as many bytes at once as the CPU's vector registers hold. All the
+ * methods take absolute indexes and do not change the buffer.
+ */
+interface ScanKernels {
+    /** The kernels used by the readers and stages, chosen once. */
+    ScanKernels SELECTED = ScalarKernels.select();
+
+    /**
+     * Returns true if the kernels look at several bytes at a time.
+     */
+    boolean isVectorized();
+
+    /**
+     * Returns the index of the first '\n' or '\r', or of the first byte
+     * equal to first or second, between from (inclusive) and to
+     * (exclusive), or -1 if there is none. first and second are the bytes
+     * that start the other line terminators of a charset.
+     */
+    int indexOfLineBreak(ByteBuffer buffer, int from, int to, byte first, byte second);
+
+    /**
+     * Returns the index of the first byte equal to value between from
+     * (inclusive) and to (exclusive), or -1 if there is none.
+     */
+    int indexOf(ByteBuffer buffer, int from, int to, byte value);
+
+    /**
+     * Returns the index of the first whitespace byte, as defined by
+     * {@link WhitespaceStripper#isWhitespace}, between from (inclusive)
+     * and to (exclusive), or -1 if there is none.
+     */
+    int indexOfWhitespace(ByteBuffer buffer, int from, int to);
+}
@@ -0,0 +1,131 @@
+package textprocessor;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import textprocessor.ProcessingStats.Phase;
+
+/**
+ * Collects the {@link ProcessingStats} of one thread.
+ *
+ * Every thread that processes lines has its own recorder, so counting is
+ * just incrementing fields; the recorders of worker threads are merged
+ * into the caller's at the end. The phases of a line are timed with
+ * {@link #lap} on each of the first {@link #SAMPLE_INTERVAL} lines, and
+ * after that only on one line out of {@link #SAMPLE_INTERVAL}, because
+ * reading the thread CPU time costs a system call; those samples are
+ * scaled up when they are recorded. Timing the first lines one by one
+ * keeps the one-off cost of the first read from being scaled up too.
+ */
+final class StatsRecorder {
+    static final int SAMPLE_INTERVAL = 1024;
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final boolean CPU_TIME = THREADS.isCurrentThreadCpuTimeSupported();
+
+    long linesRead;
+    long linesKept;
+    long replacements;
+    // counted when the input is a stream, whose size is not known beforehand
+    long bytesRead;
+    // the output came from a ResultCache, without reading the input
+    boolean cached;
+
+    private final long[] phaseWallNanos = new long[Phase.values().length];
+    private final long[] phaseCpuNanos = new long[Phase.values().length];
+    private long wallNanos;
+    private long cpuNanos;
+
+    private long lines;
+    private boolean sampled;
+    private int weight;
+    private long wallMark;
+    private long cpuMark;
+    private long startWall;
+    private long startCpu;
+
+    /**
+     * Starts timing the work of the current thread.
+     */
+    void start() {
+        startWall = System.nanoTime();
+        startCpu = cpuTime();
+    }
+
+    /**
+     * Stops timing the work of the current thread.
+     */
+    void stop() {
+        wallNanos += System.nanoTime() - startWall;
+        cpuNanos += cpuTime() - startCpu;
+    }
+
+    /**
+     * Called before reading each line, to decide whether its phases are timed.
+     */
+    void beginLine() {
+        long line = lines++;
+        weight = line < SAMPLE_INTERVAL ? 1 : SAMPLE_INTERVAL;
+        sampled = weight == 1 || line % SAMPLE_INTERVAL == 0;
+        if (sampled) {
+            mark();
+        }
+    }
+
+    /**
+     * Ends a phase of the current line, and starts the next one.
+     */
+    void lap(Phase phase) {
+        if (sampled) {
+            record(phase, weight);
+        }
+    }
+
+    /**
+     * Starts timing a phase that is not done per line.
+     */
+    void mark() {
+        wallMark = System.nanoTime();
+        cpuMark = cpuTime();
+    }
+
+    /**
+     * Ends a phase started with {@link #mark()}.
+     */
+    void measure(Phase phase) {
+        record(phase, 1);
+    }
+
+    /**
+     * Adds what a worker thread recorded. The elapsed time of the whole run
+     * is the caller's, so only the worker's CPU time is added.
+     */
+    void merge(StatsRecorder worker) {
+        linesRead += worker.linesRead;
+        linesKept += worker.linesKept;
+        replacements += worker.replacements;
+        cpuNanos += worker.cpuNanos;
+        for (int i = 0; i < phaseWallNanos.length; i++) {
+            phaseWallNanos[i] += worker.phaseWallNanos[i];
+            phaseCpuNanos[i] += worker.phaseCpuNanos[i];
+        }
+    }
+
+    ProcessingStats snapshot(long bytesRead, long bytesWritten) {
+        return new ProcessingStats(bytesRead, linesRead, linesKept, replacements, bytesWritten,
+                wallNanos, cpuNanos, phaseWallNanos, phaseCpuNanos);
+    }
+
+    private void record(Phase phase, int weight) {
+        long wall = System.nanoTime();
+        long cpu = cpuTime();
+        phaseWallNanos[phase.ordinal()] += (wall - wallMark) * weight;
+        phaseCpuNanos[phase.ordinal()] += (cpu - cpuMark) * weight;
+        wallMark = wall;
+        cpuMark = cpu;
+    }
+
+    private static long cpuTime() {
+        return CPU_TIME ? THREADS.getCurrentThreadCpuTime() : 0;
+    }
+}
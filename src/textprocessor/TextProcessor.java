@@ -1,18 +1,57 @@
 package textprocessor;
 
 import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
 import java.nio.file.Files;
-import java.util.ArrayList;
-import java.util.Scanner;
+import java.nio.file.InvalidPathException;
 import java.util.HashMap;
-
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Library implementation of {@link TextProcessorInterface}.
+ *
+ * All configuration lives in the instance, so separate TextProcessor
+ * objects never share state and can run on different threads at the same
+ * time without any locking. A single instance is not thread-safe: it must
+ * be configured and run by one thread at a time, or guarded externally.
+ * Processors writing to the standard output at the same time may have
+ * their lines interleaved; use {@link #setOutputFile} for parallel runs.
+ */
 @SuppressWarnings("DuplicatedCode")
 public class TextProcessor implements TextProcessorInterface {
-    private static ArrayList<String> fileLines = new ArrayList<>();
-    private static ArrayList<String> updatedLines = new ArrayList<>();
-    private static HashMap<String, String> actionsMap = new HashMap<String, String>();
+    /** Replace every occurrence, see {@link #setReplaceText(String, String, int)}. */
+    public static final int ALL_OCCURRENCES = LiteralReplacer.ALL;
+
+    /** The widest -n padding, see {@link #setAddPaddedLineNumber(int)}. */
+    public static final int MAX_PADDING = 9;
+
+    /** The widest -n padding with {@link #setWidePadding}, enough for any line number. */
+    public static final int MAX_WIDE_PADDING = LineTemplate.MAX_PADDING;
+
+    private final HashMap<String, String> actionsMap = new HashMap<String, String>();
+    private List<String> keepPatterns;
+    private ProcessingPlan plan;
+    private boolean memoryMapped;
+    private boolean lineBuffered;
+    private boolean widePadding;
+    private boolean follow;
+    private boolean incremental;
+    private ResultCache resultCache;
+    private OutputStream standardOutput;
+    private InputStream input;
+    private InputStream standardInput;
+    private int threads = Runtime.getRuntime().availableProcessors();
 
     public TextProcessor() {
+        reset();
+    }
+
+    public void reset() {
+        actionsMap.clear();
         actionsMap.put("o", "");
         actionsMap.put("i", "");
         actionsMap.put("k", "");
@@ -25,243 +64,873 @@ public class TextProcessor implements TextProcessorInterface {
         actionsMap.put("substring", "");
         actionsMap.put("oldString", "");
         actionsMap.put("newString", "");
+        actionsMap.put("occurrence", "1");
         actionsMap.put("suffix", "");
         actionsMap.put("padding", "");
+        keepPatterns = null;
+        plan = null;
+        memoryMapped = false;
+        lineBuffered = false;
+        widePadding = false;
+        follow = false;
+        incremental = false;
+        resultCache = null;
+        standardOutput = null;
+        input = null;
+        standardInput = null;
+        threads = Runtime.getRuntime().availableProcessors();
     }
 
-    public void reset() {
-        fileLines.clear();
-        updatedLines.clear();
-        actionsMap.clear();
+    /**
+     * Set to read the input file through a memory mapping instead of a
+     * Reader. Lines are then found by scanning the mapped bytes and only
+     * decoded when they are processed, which is faster on large files.
+     * It has no effect if the default charset is not UTF-8, ISO-8859-1
+     * or US-ASCII.
+     *
+     * @param memoryMapped Flag to toggle functionality.
+     */
+    public void setMemoryMapped(boolean memoryMapped) {
+        this.memoryMapped = memoryMapped;
+    }
+
+    /**
+     * Set to write every line out as soon as it is processed, for
+     * interactive use. By default the output is written in large batches,
+     * which is much faster but holds lines back until a batch is full.
+     *
+     * @param lineBuffered Flag to toggle functionality.
+     */
+    public void setLineBuffered(boolean lineBuffered) {
+        this.lineBuffered = lineBuffered;
+    }
+
+    /**
+     * Set to accept -n padding up to {@link #MAX_WIDE_PADDING} digits
+     * instead of {@link #MAX_PADDING}, so that the line numbers of very
+     * large files still line up.
+     *
+     * @param widePadding Flag to toggle functionality.
+     */
+    public void setWidePadding(boolean widePadding) {
+        plan = null;
+        this.widePadding = widePadding;
+    }
+
+    /**
+     * Set to keep following the input file after its end, like tail -f:
+     * the lines appended to it are processed as they are written, with the
+     * line numbers going on where they left off, and the output is flushed
+     * whenever the end of the file is reached. The file may be truncated,
+     * or renamed and created again, as log rotation does. The
+     * {@link #textprocessor()} methods then only return when the thread is
+     * interrupted, keeping the output. The file does not have to end with
+     * a new line, since its last line may not be written yet. It has no
+     * effect on a stream, which is always read to its end.
+     *
+     * @param follow Flag to toggle functionality.
+     */
+    public void setFollow(boolean follow) {
+        this.follow = follow;
     }
 
+    /**
+     * Set to process a file again without redoing the work for the parts of
+     * it that have not changed since the output file was written, such as
+     * a large file with lines appended or edited. A manifest of the input's
+     * chunks is kept next to the output file, in FILE.manifest, and the
+     * output of the unchanged chunks is copied from the previous output.
+     * The output is the same as a full run's, and replaces the output file
+     * if it exists, which is otherwise an error. With line numbers, the
+     * chunks after inserted or removed lines are processed again.
+     * It has no effect when the output goes to the standard output, or if
+     * the default charset is not UTF-8, ISO-8859-1 or US-ASCII. The
+     * statistics of a run only count the chunks processed.
+     *
+     * @param incremental Flag to toggle functionality.
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    /**
+     * Set to keep the output of each run in a cache, and to write it from
+     * there when the same file is processed again with the same
+     * configuration, without reading the file. See {@link ResultCache} for
+     * when a file counts as the same. One cache can be shared by many
+     * processors. It has no effect on a stream, or with {@link #setFollow}
+     * or {@link #setIncremental}. The statistics of a run whose output came
+     * from the cache count no lines or bytes read.
+     *
+     * @param resultCache The cache to use, or null for none.
+     */
+    public void setResultCache(ResultCache resultCache) {
+        this.resultCache = resultCache;
+    }
+
+    /**
+     * Sets the number of threads used to process large files. Files smaller
+     * than a few megabytes, and any file when threads is 1, are processed on
+     * the calling thread. Defaults to the number of available processors.
+     *
+     * @param threads The number of threads, at least 1.
+     */
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1");
+        }
+        this.threads = threads;
+    }
+
+    /*
+     * Sets where the output goes when there is no output file, instead of
+     * System.out. The stream is flushed but not closed.
+     */
+    void setStandardOutput(OutputStream standardOutput) {
+        this.standardOutput = standardOutput;
+    }
+
+    /*
+     * Sets what an input file named "-" reads, instead of System.in. The
+     * stream is not closed.
+     */
+    void setStandardInput(InputStream standardInput) {
+        this.standardInput = standardInput;
+    }
+
+    int threads() {
+        return threads;
+    }
+
+    /*
+     * Returns a processor with the same configuration, which shares this
+     * one's compiled plan, so that many files can be processed at once.
+     */
+    TextProcessor copy() {
+        TextProcessor copy = new TextProcessor();
+        copy.actionsMap.putAll(actionsMap);
+        copy.keepPatterns = keepPatterns;
+        copy.plan = plan;
+        copy.memoryMapped = memoryMapped;
+        copy.lineBuffered = lineBuffered;
+        copy.widePadding = widePadding;
+        copy.follow = follow;
+        copy.incremental = incremental;
+        copy.resultCache = resultCache;
+        copy.standardOutput = standardOutput;
+        copy.input = input;
+        copy.standardInput = standardInput;
+        copy.threads = threads;
+        return copy;
+    }
+
+    /**
+     * Sets the input file. "-" reads the standard input, as
+     * {@link #setInput(InputStream)} would; a file named "-" can be given
+     * as "./-".
+     *
+     * @param filepath The input file, or "-".
+     */
     public void setFilepath(String filepath) {
+        input = null;
         actionsMap.put("inFilePath", filepath);
     }
 
+    /**
+     * Set to read the input from a stream instead of a file, such as a pipe
+     * from another command. The lines are processed and written as they
+     * arrive; with {@link #setLineBuffered} each one is also written out
+     * straight away. The stream is read to its end but not closed.
+     *
+     * A stream cannot be checked before it is read, so a last line without
+     * a line terminator is only reported when it is reached, after the
+     * lines before it have been written to the standard output. An output
+     * file is still removed. Replaces the file set with {@link #setFilepath}.
+     *
+     * @param input The stream to read.
+     */
+    public void setInput(InputStream input) {
+        this.input = input;
+        actionsMap.put("inFilePath", "-");
+    }
+
+    /**
+     * Set to read the input from a channel, as {@link #setInput(InputStream)}
+     * does. The channel is read to its end but not closed.
+     *
+     * @param input The channel to read.
+     */
+    public void setInput(ReadableByteChannel input) {
+        setInput(Channels.newInputStream(input));
+    }
+
     public void setOutputFile(String outputFile) {
         actionsMap.put("o", "present");
         actionsMap.put("outFilePath", outputFile);
     }
 
     public void setCaseInsensitive(boolean caseInsensitive) {
+        plan = null;
         actionsMap.put("i", "present");
     }
 
     public void setKeepLines(String keepLines) {
+        plan = null;
+        keepPatterns = null;
         actionsMap.put("k", "present");
         actionsMap.put("substring", keepLines);
     }
 
+    /**
+     * Set to keep only the lines containing at least one of the given
+     * strings. All the strings are searched for in a single pass over each
+     * line, so the cost barely depends on how many there are. Replaces any
+     * string set with {@link #setKeepLines(String)}.
+     * This method has to be called before invoking the
+     * {@link #textprocessor()} methods.
+     *
+     * @param keepLines The strings, any of which must be included.
+     */
+    public void setKeepLines(List<String> keepLines) {
+        plan = null;
+        keepPatterns = List.copyOf(keepLines);
+        actionsMap.put("k", "present");
+        actionsMap.put("substring", "");
+    }
+
     public void setReplaceText(String oldString, String newString) {
+        setReplaceText(oldString, newString, 1);
+    }
+
+    /**
+     * Set to replace the given occurrence of string old in each line with
+     * string new, or every occurrence with {@link #ALL_OCCURRENCES}. Both
+     * strings are taken literally. The search is case-sensitive unless
+     * {@link #setCaseInsensitive} is set.
+     * This method has to be called before invoking the
+     * {@link #textprocessor()} methods.
+     *
+     * @param oldString The string to be replaced.
+     * @param newString The new string replacing oldString.
+     * @param occurrence Which occurrence to replace, starting from 1, or {@link #ALL_OCCURRENCES}.
+     */
+    public void setReplaceText(String oldString, String newString, int occurrence) {
+        if (occurrence < 0) {
+            throw new IllegalArgumentException("occurrence must be at least 1, or ALL_OCCURRENCES");
+        }
+        plan = null;
         actionsMap.put("r", "present");
         actionsMap.put("oldString", oldString);
         actionsMap.put("newString", newString);
+        actionsMap.put("occurrence", String.valueOf(occurrence));
     }
 
     public void setAddPaddedLineNumber(int padding) {
+        plan = null;
         actionsMap.put("n", "present");
         actionsMap.put("padding", String.valueOf(padding));
     }
 
     public void setRemoveWhitespace(boolean removeWhitespace) {
+        plan = null;
         if (removeWhitespace) {
             actionsMap.put("w", "present");
         }
     }
 
     public void setSuffixLines(String suffixLines) {
+        plan = null;
         actionsMap.put("s", "present");
         actionsMap.put("suffix", suffixLines);
     }
 
     public void textprocessor() throws TextProcessorException {
-        // read in the lines of the file
-        readFile(fileLines);
+        // a flight recording of the run needs its statistics
+        if (ProcessingEvents.needStats()) {
+            textprocessorWithStats();
+        } else {
+            run(null);
+        }
+    }
 
-        // check arguments
-        if (!validateParameters(actionsMap)) {
-            throw new TextProcessorException("1 or more parameters is missing or invalid");
+    /**
+     * Runs {@link #textprocessor()} and returns what it did and where the
+     * time went. Collecting the statistics only costs a few percent.
+     *
+     * @return The statistics of the run.
+     * @throws TextProcessorException In the same cases as {@link #textprocessor()}.
+     */
+    public ProcessingStats textprocessorWithStats() throws TextProcessorException {
+        String path = actionsMap.get("inFilePath");
+        ProcessingEvents.FileRead event = ProcessingEvents.beginFileRead();
+        StatsRecorder stats = new StatsRecorder();
+        stats.start();
+        long bytesWritten = run(stats);
+        stats.stop();
+
+        long bytesRead = inputStream() == null && !follow && !stats.cached ? new File(path).length() : stats.bytesRead;
+        ProcessingStats result = stats.snapshot(bytesRead, bytesWritten);
+        ProcessingEvents.endFileRead(event, path, result);
+        return result;
+    }
+
+    /*
+     * Processes the file, and returns the number of bytes written.
+     */
+    private long run(StatsRecorder stats) throws TextProcessorException {
+        File inFile = new File(actionsMap.get("inFilePath"));
+        InputStream stream = inputStream();
+
+        // the output of an earlier run over this version of the file, which was checked then
+        String cacheKey = cacheKey(inFile, stream);
+        byte[] cached = cacheKey == null ? null : resultCache.get(cacheKey);
+
+        // check the input file before anything is written, a stream is checked as it is read
+        if (stream == null && follow) {
+            checkFollowedFile(inFile);
+        } else if (stream == null && cached == null) {
+            checkFile(inFile);
         }
 
-        // For each line in the file, check if the flags are provided and perform the appropriate operations
-        for (String line: fileLines) {
-            String newLine = line;
-            updatedLines.add(line);
-
-            // -k Flag
-            if (actionsMap.get("k").equals("present")) {
-                String substring = actionsMap.get("substring");
-                String lowerSubstring = substring.toLowerCase();
-                String lowerLine = line.toLowerCase();
-                // case insensitive
-                if (actionsMap.get("i").equals("present")) {
-                    if (!(lowerLine.contains(lowerSubstring))) {
-                        updatedLines.remove(line);
-                        continue;
-                    }
-                // case sensitive
-                } else {
-                    if (!(line.contains(substring))) {
-                        updatedLines.remove(line);
-                        continue;
-                    }
-                }
+        // check arguments and compile them into a plan
+        compilePlan();
+
+        if (cached != null) {
+            if (stats != null) {
+                stats.cached = true;
             }
+            return writeCached(cached);
+        }
 
-            // -r Flag
-            if (actionsMap.get("r").equals("present")) {
-                // get the old substring and the new string to replace it with
-                String oldString = actionsMap.get("oldString");
-                String newString = actionsMap.get("newString");
-                // get the lowercase version of the old substring and the line
-                String lowerOld = oldString.toLowerCase();
-                String lowerLine = line.toLowerCase();
-                // filter special characters in the string
-                String filteredOld = filter(oldString);
-
-                // case-insensitive
-                if (actionsMap.get("i").equals("present")) {
-                    // check if the line contains the substring (case-insensitive)
-                    if (lowerLine.contains(lowerOld)) {
-                        // set the output line to a newline with the first instance the old substring replaced
-                        newLine = newLine.replaceFirst("(?i)" + filteredOld, newString);
-                    }
-                // case sensitive
-                } else {
-                    // check if the line contains the substring
-                    if (line.contains(oldString)) {
-                        // set the output line to a newline with the first instance the old substring replaced
-                        newLine = newLine.replaceFirst(filteredOld, newString);
-                    }
-                }
+        // If output file is specified
+        if (actionsMap.get("o").equals("present")) {
+            if (incremental && stream == null && !follow && IncrementalProcessor.isApplicable()) {
+                return writeIncrementally(inFile, stats);
             }
+            return writeToFile(inFile, stream, stats, cacheKey);
+        // otherwise write to the standard output
+        } else {
+            return writeToStdout(inFile, stream, stats, cacheKey);
+        }
+    }
+
+    /*
+     * Returns the key of this run in the result cache, or null if it is not
+     * cached.
+     */
+    private String cacheKey(File inFile, InputStream stream) {
+        if (resultCache == null || stream != null || follow || incremental) {
+            return null;
+        }
+        try {
+            return ResultCache.key(inFile.toPath(), configurationKey());
+        } catch (IOException | InvalidPathException e) {
+            // checking the file reports it
+            return null;
+        }
+    }
 
-            // -n Flag
-            if (actionsMap.get("n").equals("present")) {
-                String paddingValue = actionsMap.get("padding");
+    /*
+     * Returns the stream to read instead of the input file, or null.
+     */
+    private InputStream inputStream() {
+        if (input == null && actionsMap.get("inFilePath").equals("-")) {
+            return standardInput == null ? System.in : standardInput;
+        }
+        return input;
+    }
 
-                // check if the padding is within the appropriate values
-                int testerValue = Integer.parseInt(paddingValue);
-                if (testerValue > 9 || testerValue < 1) {
-                    throw new TextProcessorException("Padding Value Out of Range");
-                }
+    /*
+     * Returns everything that decides the output of a line, but not which
+     * files are read and written.
+     */
+    String configurationKey() {
+        StringBuilder key = new StringBuilder();
+        for (Map.Entry<String, String> action : new TreeMap<>(actionsMap).entrySet()) {
+            String name = action.getKey();
+            if (!name.equals("inFilePath") && !name.equals("outFilePath") && !name.equals("o")) {
+                appendKey(key, name);
+                appendKey(key, action.getValue());
+            }
+        }
+        if (keepPatterns != null) {
+            for (String pattern : keepPatterns) {
+                appendKey(key, pattern);
+            }
+        }
+        appendKey(key, String.valueOf(widePadding));
+        appendKey(key, Charset.defaultCharset().name());
+        appendKey(key, System.lineSeparator());
+        return key.toString();
+    }
+
+    private static void appendKey(StringBuilder key, String value) {
+        // the length keeps the values apart, whatever they contain
+        key.append(value.length()).append(':').append(value);
+    }
+
+    /*
+     * Validates the configuration and compiles it once into a plan, which is
+     * kept until a setter changes the actions.
+     */
+    ProcessingPlan compilePlan() throws TextProcessorException {
+        if (plan == null) {
+            validateParameters(actionsMap);
+            plan = ProcessingPlan.compile(actionsMap, keepPatterns);
+        }
+        return plan;
+    }
 
-                String paddingFormatter = "%0" + paddingValue + "d";
-                newLine = String.format(paddingFormatter, fileLines.indexOf(line) + 1) + " " + newLine;
+    private File createOutputFile() throws TextProcessorException {
+        File outFile = new File(actionsMap.get("outFilePath"));
+        try {
+            if (!outFile.createNewFile()) {
+                // if the file already exists
+                throw new TextProcessorException("File Already Exists");
             }
+        } catch (IOException e) {
+            throw new TextProcessorException("Error Writing to Output File");
+        }
+        return outFile;
+    }
 
-            // -w Flag
-            if (actionsMap.get("w").equals("present")) {
-                newLine = newLine.replaceAll("\\s", "");
+    /*
+     * Unless cacheKey is null, the output is also kept in the result cache.
+     */
+    private long writeToFile(File inFile, InputStream stream, StatsRecorder stats, String cacheKey)
+            throws TextProcessorException {
+        File outFile = createOutputFile();
+
+        // write each line as soon as it is processed, in large batches
+        boolean completed = false;
+        BufferedSink out = null;
+        long expectedSize = stream == null ? inFile.length() : BufferedSink.BUFFER_SIZE;
+        // following ends with an interrupt, which must not close the output before it is flushed
+        try (BufferedSink sink = stream == null && follow
+                ? BufferedSink.toFileUninterruptibly(outFile.toPath(), lineBuffered)
+                : BufferedSink.toFile(outFile.toPath(), lineBuffered, expectedSize)) {
+            out = sink;
+            if (cacheKey != null) {
+                sink.keepCopy(resultCache.getMaxBytes());
             }
+            process(inFile, stream, sink, stats);
+            completed = true;
 
-            // -s Flag
-            if (actionsMap.get("s").equals("present")) {
-                String suffix = actionsMap.get("suffix");
-                newLine = newLine + suffix;
+        } catch (IOException e) {
+            throw new TextProcessorException("Error Writing to Output File");
+        } finally {
+            // do not leave a partial output file behind
+            if (!completed) {
+                outFile.delete();
             }
+        }
+        keepResult(cacheKey, out);
+        return out.bytesWritten();
+    }
 
-            // add the changes to the output list
-            updatedLines.set(updatedLines.indexOf(line), newLine);
+    private long writeIncrementally(File inFile, StatsRecorder stats) throws TextProcessorException {
+        byte[] configuration = IncrementalProcessor.hash(configurationKey());
+        IncrementalProcessor processor = new IncrementalProcessor(inFile.toPath(),
+                new File(actionsMap.get("outFilePath")).toPath(), plan, configuration, threads, stats);
+        try {
+            return processor.run();
+        } catch (IOException e) {
+            throw new TextProcessorException("Error Writing to Output File");
         }
+    }
 
-        // If output file is specified
+    /*
+     * Writes the output of a run kept in the result cache.
+     */
+    private long writeCached(byte[] output) throws TextProcessorException {
         if (actionsMap.get("o").equals("present")) {
+            File outFile = createOutputFile();
+            try {
+                Files.write(outFile.toPath(), output);
+            } catch (IOException e) {
+                outFile.delete();
+                throw new TextProcessorException("Error Writing to Output File");
+            }
+        } else {
+            OutputStream out = standardOutput == null ? System.out : standardOutput;
+            try {
+                out.write(output);
+                out.flush();
+            } catch (IOException e) {
+                // System.out does not throw
+            }
+        }
+        return output.length;
+    }
+
+    /*
+     * Unless cacheKey is null, the output is also kept in the result cache.
+     */
+    private long writeToStdout(File inFile, InputStream stream, StatsRecorder stats, String cacheKey)
+            throws TextProcessorException {
+        BufferedSink sink = standardOutput == null ? BufferedSink.toStdout(lineBuffered)
+                : BufferedSink.toStream(standardOutput, lineBuffered);
+        if (cacheKey != null) {
+            sink.keepCopy(resultCache.getMaxBytes());
+        }
+        boolean completed = false;
+        try {
+            process(inFile, stream, sink, stats);
+            completed = true;
+        } catch (IOException e) {
+            // System.out does not throw
+        } finally {
+            closeQuietly(sink);
+        }
+        if (completed) {
+            keepResult(cacheKey, sink);
+        }
+        return sink.bytesWritten();
+    }
+
+    /*
+     * Keeps the output copied by a closed sink in the result cache, unless
+     * cacheKey is null or the output was too large.
+     */
+    private void keepResult(String cacheKey, BufferedSink sink) {
+        byte[] output = cacheKey == null ? null : sink.copy();
+        if (output != null) {
+            resultCache.put(cacheKey, output);
+        }
+    }
+
+    /*
+     * Streams the processed lines of the input file, or of stream unless it
+     * is null, to out. Errors reading the input are reported here;
+     * IOExceptions thrown come from writing to out. Unless stats is null,
+     * what is done is recorded in it.
+     */
+    private void process(File inFile, InputStream stream, OutputSink out, StatsRecorder stats)
+            throws TextProcessorException, IOException {
+
+        // a stream can only be read as it comes, one line at a time
+        if (stream != null) {
+            processStream(stream, out, stats);
+            return;
+        }
+
+        // so can a file that is still being written
+        if (follow) {
+            processFollowing(inFile, out, stats);
+            return;
+        }
+
+        // lines are processed as bytes when the plan allows it, unless the
+        // work is CPU-bound and parallel processing pays off
+        if (PassthroughProcessor.isApplicable(plan)
+                && !(PassthroughProcessor.isCpuBound(plan) && ParallelProcessor.isWorthwhile(inFile, threads))) {
+            PassthroughProcessor processor = open(inFile, () -> new PassthroughProcessor(inFile.toPath(), plan, stats));
             try {
-                // create the output file
-                File outFile = new File(actionsMap.get("outFilePath"));
-                if (!outFile.createNewFile()) {
-                    // if the file already exists
-                    throw new TextProcessorException("File Already Exists");
+                Read<Boolean> nextLine = processor::nextLine;
+                while (readLine(nextLine, stats)) {
+                    processor.writeLine(out);
                 }
+                processor.finish(out);
+            } finally {
+                closeQuietly(processor);
+            }
+            return;
+        }
 
-                // create a filewriter object and write to the file
-                FileWriter fw = new FileWriter(outFile);
-                for (String updatedLine : updatedLines) {
-                    fw.write(updatedLine + System.lineSeparator());
+        // large files are split into chunks and processed on several threads
+        if (ParallelProcessor.isWorthwhile(inFile, threads)) {
+            ParallelProcessor processor = open(inFile, () -> new ParallelProcessor(inFile.toPath(), plan, threads, stats));
+            try {
+                Read<String> nextChunk = processor::nextChunk;
+                String chunk;
+                while ((chunk = read(nextChunk)) != null) {
+                    if (stats != null) {
+                        stats.mark();
+                    }
+                    out.write(chunk);
+                    if (stats != null) {
+                        stats.measure(ProcessingStats.Phase.WRITE);
+                    }
                 }
-                fw.close();
-                reset();
+            } finally {
+                closeQuietly(processor);
+            }
+            return;
+        }
 
-            } catch (IOException e) {
-                throw new TextProcessorException("Error Writing to Output File");
+        // a case-sensitive -k can drop lines by searching their bytes, before they are decoded
+        LineTemplate template = plan.template();
+        ByteSearcher keepFilter = plan.keepFilter(Charset.defaultCharset());
+        if (keepFilter != null) {
+            MappedLineReader reader = open(inFile, () -> new MappedLineReader(inFile.toPath(), Charset.defaultCharset()));
+            try {
+                Read<Boolean> nextLine = reader::nextLine;
+                long lineNumber = 0;
+                while (readLine(nextLine, stats)) {
+                    lineNumber++;
+                    boolean kept = reader.lineContains(keepFilter);
+                    if (stats != null) {
+                        stats.lap(ProcessingStats.Phase.KEEP);
+                    }
+                    if (kept) {
+                        String updatedLine = plan.transformKept(reader.line(), stats);
+                        if (updatedLine != null) {
+                            template.writeLine(out, updatedLine, lineNumber);
+                            written(stats);
+                        }
+                    }
+                }
+                if (stats != null) {
+                    stats.linesRead += lineNumber;
+                }
+            } finally {
+                closeQuietly(reader);
             }
+            return;
+        }
 
-        // otherwise write to the standard output
-        } else {
-            for (String updatedLine: updatedLines) {
-                System.out.println(updatedLine);
+        // otherwise the lines are read one at a time while processing
+        LineSource reader = open(inFile, () -> openLineSource(inFile, memoryMapped));
+        try {
+            Read<String> nextLine = reader::readLine;
+            long lineNumber = 0;
+            String line;
+            while ((line = readLine(nextLine, stats)) != null) {
+                lineNumber++;
+                String updatedLine = plan.transform(line, stats);
+                if (updatedLine != null) {
+                    template.writeLine(out, updatedLine, lineNumber);
+                    written(stats);
+                }
+            }
+            if (stats != null) {
+                stats.linesRead += lineNumber;
+            }
+        } finally {
+            closeQuietly(reader);
+        }
+    }
+
+    /*
+     * Processes each line of a stream as soon as it has been read, without
+     * waiting for the rest of the stream. The stream is not closed.
+     */
+    private void processStream(InputStream stream, OutputSink out, StatsRecorder stats)
+            throws TextProcessorException, IOException {
+        CountingInputStream counted = stats == null ? null : new CountingInputStream(stream);
+        LineReader reader = new LineReader(new InputStreamReader(counted == null ? stream : counted,
+                Charset.defaultCharset()));
+        LineTemplate template = plan.template();
+        Read<String> nextLine = reader::readLine;
+        long lineNumber = 0;
+        String line;
+        while ((line = readLine(nextLine, stats)) != null) {
+            // as a file must, the stream must end with a line terminator
+            if (!reader.lineTerminated()) {
+                throw new TextProcessorException("Last file element is not new line");
             }
-            reset();
+            lineNumber++;
+            String updatedLine = plan.transform(line, stats);
+            if (updatedLine != null) {
+                template.writeLine(out, updatedLine, lineNumber);
+                written(stats);
+            }
+        }
+        if (stats != null) {
+            stats.linesRead += lineNumber;
+            stats.bytesRead = counted.count;
         }
     }
 
-    private void readFile(ArrayList<String> fileLines) throws TextProcessorException {
+    /*
+     * Processes the lines of the input file and then those appended to it,
+     * until the thread is interrupted.
+     */
+    private void processFollowing(File inFile, OutputSink out, StatsRecorder stats)
+            throws TextProcessorException, IOException {
+        FileFollower follower = open(inFile, () -> new FileFollower(inFile.toPath(), Charset.defaultCharset()));
         try {
-            File inFile = new File(actionsMap.get("inFilePath"));
+            LineTemplate template = plan.template();
+            Read<String> nextLine = follower::readLine;
+            Read<Boolean> await = follower::await;
+            long lineNumber = 0;
+            // an interrupt ends following; it is cleared before each read, so that it does not close the files
+            boolean interrupted = false;
+            do {
+                String line;
+                while (!(interrupted = Thread.interrupted()) && (line = readLine(nextLine, stats)) != null) {
+                    lineNumber++;
+                    String updatedLine = plan.transform(line, stats);
+                    if (updatedLine != null) {
+                        template.writeLine(out, updatedLine, lineNumber);
+                        written(stats);
+                    }
+                }
+                // the lines written so far are seen before waiting for more
+                out.flush();
+            } while (!interrupted && read(await));
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (stats != null) {
+                stats.linesRead += lineNumber;
+                stats.bytesRead = follower.bytesRead();
+            }
+        } finally {
+            closeQuietly(follower);
+        }
+    }
+
+    private void checkFollowedFile(File inFile) throws TextProcessorException {
+        if (!inFile.isFile()) {
+            throw new TextProcessorException("Error reading the file");
+        }
+    }
+
+    private void checkFile(File inFile) throws TextProcessorException {
+        try {
+            if (!inFile.isFile()) {
+                throw new FileNotFoundException(inFile.getPath());
+            }
             if (inFile.length() > 0) {
-                // Check for newline at the end of file
-                byte[] fileBytes = Files.readAllBytes(inFile.toPath());
+                // Check for newline at the end of file by reading only its last byte
                 byte[] lineSeps = System.lineSeparator().getBytes();
-                String lastElement = String.valueOf(fileBytes[fileBytes.length - 1]);
-                String newline = String.valueOf(lineSeps[lineSeps.length - 1]);
-                if (!lastElement.equals(newline)){
+                if (readLastByte(inFile) != lineSeps[lineSeps.length - 1]) {
                     throw new TextProcessorException("Last file element is not new line");
                 }
             }
-            // read the file lines
-            Scanner fileReader = new Scanner(inFile);
-            while (fileReader.hasNextLine()) {
-                fileLines.add(fileReader.nextLine());
-            }
-            fileReader.close();
+        } catch (IOException e) {
+            throw new TextProcessorException("Error reading the file");
+        }
+    }
+
+    static LineSource openLineSource(File inFile, boolean memoryMapped) throws IOException {
+        Charset charset = Charset.defaultCharset();
+        if (memoryMapped && MappedLineReader.supports(charset)) {
+            return new MappedLineReader(inFile.toPath(), charset);
+        }
+        return new LineReader(new FileReader(inFile, charset));
+    }
+
+    private byte readLastByte(File inFile) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(inFile, "r")) {
+            file.seek(file.length() - 1);
+            return file.readByte();
+        }
+    }
+
+    /*
+     * Reading the input, where every IOException is an error reading the file.
+     */
+    private interface Read<T> {
+        T read() throws IOException;
+    }
 
+    private <T> T read(Read<T> reader) throws TextProcessorException {
+        try {
+            return reader.read();
         } catch (IOException e) {
             throw new TextProcessorException("Error reading the file");
         }
     }
 
-    private boolean validateParameters(HashMap<String, String> actionsMap){
+    /*
+     * Opens a reader of the input file, recording a flight recorder event.
+     */
+    private <T> T open(File inFile, Read<T> opener) throws TextProcessorException {
+        ProcessingEvents.FileOpen event = ProcessingEvents.beginFileOpen();
+        T reader = read(opener);
+        ProcessingEvents.endFileOpen(event, inFile);
+        return reader;
+    }
+
+    /*
+     * Reads the next line, timing the read when stats are recorded.
+     */
+    private <T> T readLine(Read<T> reader, StatsRecorder stats) throws TextProcessorException {
+        if (stats == null) {
+            return read(reader);
+        }
+        stats.beginLine();
+        T line = read(reader);
+        stats.lap(ProcessingStats.Phase.READ);
+        return line;
+    }
+
+    private static void written(StatsRecorder stats) {
+        if (stats != null) {
+            stats.linesKept++;
+            stats.lap(ProcessingStats.Phase.WRITE);
+        }
+    }
+
+    /*
+     * Counts the bytes read from a stream, for the statistics of a run.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            int read = super.read(bytes, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+    }
+
+    private void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+            // nothing left to read
+        }
+    }
+
+    private void validateParameters(HashMap<String, String> actionsMap) throws TextProcessorException {
         // i without k or r
         if (actionsMap.get("i").equals("present")){
             if (actionsMap.get("k").equals("") && actionsMap.get("r").equals("")) {
-                return false;
+                throw new TextProcessorException("1 or more parameters is missing or invalid");
             }
             // w and n
         } else if (actionsMap.get("w").equals("present") && actionsMap.get("n").equals("present")) {
-            return false;
+            throw new TextProcessorException("1 or more parameters is missing or invalid");
             // k and r
         } else if (actionsMap.get("k").equals("present") && actionsMap.get("r").equals("present")) {
-            return false;
+            throw new TextProcessorException("1 or more parameters is missing or invalid");
             // r flag is present but the parameters are empty
         } else if (actionsMap.get("r").equals("present")) {
             if (actionsMap.get("oldString").equals("") || actionsMap.get("oldString").equals("")) {
-                return false;
+                throw new TextProcessorException("1 or more parameters is missing or invalid");
             }
             // s flag is present but the parameters are empty
         } else if (actionsMap.get("s").equals("present")) {
             if (actionsMap.get("suffix").equals("")) {
-                return false;
+                throw new TextProcessorException("1 or more parameters is missing or invalid");
             }
         }
 
-        // no errors
-        return true;
-    }
-
-    private String filter(String oldString){
-        String specials = "[\\[+\\]+:{}_^*.~?\\\\/()><=\"!]";
-        StringBuilder builder = new StringBuilder();
-
-        for (char character: oldString.toCharArray()) {
-            if (specials.contains(String.valueOf(character))) {
-                builder.append("\\").append(character);
-            } else {
-                builder.append(character);
+        // n flag is present but the padding is not within the appropriate values
+        if (actionsMap.get("n").equals("present")) {
+            int padding = Integer.parseInt(actionsMap.get("padding"));
+            if (padding > (widePadding ? MAX_WIDE_PADDING : MAX_PADDING) || padding < 1) {
+                throw new TextProcessorException("Padding Value Out of Range");
             }
         }
-
-        return builder.toString();
     }
 }
@@ -25,7 +25,9 @@ public interface TextProcessorInterface {
 
     /**
       * Set to apply case-insensitive matching when used with -k or -r flag
-      * ONLY. This method has to be called before invoking the
+      * ONLY. Characters are compared as in {@link String#equalsIgnoreCase},
+      * so the result does not depend on the default locale.
+      * This method has to be called before invoking the
       * {@link #textprocessor()} methods.
       *
       * @param caseInsensitive Flag to toggle functionality.
@@ -43,7 +45,8 @@ public interface TextProcessorInterface {
 
     /**
       * Set to replace the first instance of string old in each line
-      * with string new. The search is case-sensitive.
+      * with string new. The search is case-sensitive. Both strings are
+      * taken literally, with no special characters.
       * This method has to be called before invoking the
       * {@link #textprocessor()} methods.
       *
@@ -58,7 +61,7 @@ public interface TextProcessorInterface {
       * This method has to be called before invoking the
       * {@link #textprocessor()} methods.
       *
-      * @param padding The amount of padding to be used.
+      * @param padding The amount of padding to be used, from 1 to 9.
       */
     void setAddPaddedLineNumber(int padding);
 
@@ -85,6 +88,10 @@ public interface TextProcessorInterface {
       * and according to the current configuration, which is set
       * through calls to the other methods in the interface.
       *
+      * The configuration is kept after the call, so the same processor
+      * can be run on other files by calling {@link #setFilepath} (and
+      * {@link #setOutputFile}) again; use {@link #reset()} to clear it.
+      *
       * It throws a {@link TextProcessorException} if an error condition
       * occurs (e.g., when the specified file does not exist).
       *
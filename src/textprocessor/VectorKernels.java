@@ -0,0 +1,78 @@
+package textprocessor;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The {@link ScanKernels} built on the Vector API, which compare a whole
+ * vector of bytes (32 with AVX2, 64 with AVX-512) at once and use the
+ * scalar loops for the bytes left over at the end.
+ *
+ * This class needs the jdk.incubator.vector module, both to compile and
+ * to run. It is only loaded by name from {@link ScalarKernels#select()},
+ * so the rest of the code works without the module.
+ */
+final class VectorKernels implements ScanKernels {
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+
+    private final ScalarKernels tail = new ScalarKernels();
+
+    @Override
+    public boolean isVectorized() {
+        return true;
+    }
+
+    @Override
+    public int indexOfLineBreak(ByteBuffer buffer, int from, int to, byte first, byte second) {
+        int index = from;
+        int bound = from + SPECIES.loopBound(to - from);
+        for (; index < bound; index += SPECIES.length()) {
+            ByteVector bytes = load(buffer, index);
+            VectorMask<Byte> found = bytes.eq((byte) '\n').or(bytes.eq((byte) '\r'))
+                    .or(bytes.eq(first)).or(bytes.eq(second));
+            if (found.anyTrue()) {
+                return index + found.firstTrue();
+            }
+        }
+        return tail.indexOfLineBreak(buffer, index, to, first, second);
+    }
+
+    @Override
+    public int indexOf(ByteBuffer buffer, int from, int to, byte value) {
+        int index = from;
+        int bound = from + SPECIES.loopBound(to - from);
+        for (; index < bound; index += SPECIES.length()) {
+            VectorMask<Byte> found = load(buffer, index).eq(value);
+            if (found.anyTrue()) {
+                return index + found.firstTrue();
+            }
+        }
+        return tail.indexOf(buffer, index, to, value);
+    }
+
+    @Override
+    public int indexOfWhitespace(ByteBuffer buffer, int from, int to) {
+        int index = from;
+        int bound = from + SPECIES.loopBound(to - from);
+        for (; index < bound; index += SPECIES.length()) {
+            ByteVector bytes = load(buffer, index);
+            // ' ', or '\t' to '\r'; bytes of non-ASCII characters are negative, so below '\t'
+            VectorMask<Byte> found = bytes.eq((byte) ' ')
+                    .or(bytes.compare(VectorOperators.GE, (byte) '\t')
+                            .and(bytes.compare(VectorOperators.LE, (byte) '\r')));
+            if (found.anyTrue()) {
+                return index + found.firstTrue();
+            }
+        }
+        return tail.indexOfWhitespace(buffer, index, to);
+    }
+
+    private static ByteVector load(ByteBuffer buffer, int index) {
+        return ByteVector.fromByteBuffer(SPECIES, buffer, index, ByteOrder.nativeOrder());
+    }
+}
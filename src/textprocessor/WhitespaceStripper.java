@@ -0,0 +1,78 @@
+package textprocessor;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Removes whitespace from lines for -w, without regular expressions.
+ *
+ * Whitespace is exactly what the regular expression "\s" matches by
+ * default: ' ', '\t', '\n', the vertical tab, '\f' and '\r'. Those
+ * characters are all ASCII, so the same scan works on Strings and on the
+ * bytes of ASCII, Latin-1 or well-formed UTF-8 text, where no byte of a
+ * multi-byte character is ever below 0x80. Both versions return early
+ * when a line has no whitespace, so such lines are never copied. The
+ * byte version finds the first whitespace with the {@link ScanKernels}.
+ *
+ * A String is compacted in a buffer that is kept for the next line and
+ * only grows for a longer one, so a stripper belongs to one thread.
+ */
+final class WhitespaceStripper {
+    private char[] buffer = new char[0];
+
+    static boolean isWhitespace(int character) {
+        return character == ' ' || (character >= '\t' && character <= '\r');
+    }
+
+    /**
+     * Returns the line without whitespace, or the line itself if it has none.
+     */
+    String strip(String line) {
+        int first = 0;
+        int length = line.length();
+        while (first < length && !isWhitespace(line.charAt(first))) {
+            first++;
+        }
+        if (first == length) {
+            return line;
+        }
+
+        if (buffer.length < length - 1) {
+            buffer = new char[length - 1];
+        }
+        char[] characters = buffer;
+        line.getChars(0, first, characters, 0);
+        int count = first;
+        for (int i = first + 1; i < length; i++) {
+            char character = line.charAt(i);
+            if (!isWhitespace(character)) {
+                characters[count++] = character;
+            }
+        }
+        return new String(characters, 0, count);
+    }
+
+    /**
+     * Copies the bytes between from and to into target, without whitespace.
+     *
+     * @param target An array of at least to - from bytes.
+     * @return The number of bytes copied, or -1 if there is no whitespace,
+     *         in which case nothing is copied.
+     */
+    static int strip(ByteBuffer source, int from, int to, byte[] target) {
+        int first = ScanKernels.SELECTED.indexOfWhitespace(source, from, to);
+        if (first < 0) {
+            return -1;
+        }
+
+        // whitespace tends to come in short runs, so the rest is compacted byte by byte
+        source.get(from, target, 0, first - from);
+        int count = first - from;
+        for (int i = first + 1; i < to; i++) {
+            byte value = source.get(i);
+            if (!isWhitespace(value)) {
+                target[count++] = value;
+            }
+        }
+        return count;
+    }
+}
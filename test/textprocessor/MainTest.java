@@ -1,4 +1,4 @@
-package edu.gatech.seclass.textprocessor;
+package textprocessor;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
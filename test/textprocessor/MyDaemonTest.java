@@ -0,0 +1,172 @@
+package textprocessor;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+@Timeout(value = 5, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+public class MyDaemonTest {
+    private final String usageStr =
+            "Usage: textprocessor [ -o filename | -i | -k substring | -r old new | -n padding | -w | -s suffix ] FILE"
+                    + System.lineSeparator();
+
+    @TempDir
+    Path tempDirectory;
+
+    @RegisterExtension
+    OutputCapture capture = new OutputCapture();
+
+    /*
+     * Test Utilities
+     */
+
+    private Path createFile(String contents, String fileName) throws IOException {
+        return Files.write(tempDirectory.resolve(fileName), contents.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private int send(Path socket, Properties settings, ByteArrayOutputStream out, ByteArrayOutputStream err,
+                     String... args) throws IOException {
+        return send(socket, settings, InputStream.nullInputStream(), out, err, args);
+    }
+
+    private int send(Path socket, Properties settings, InputStream in, ByteArrayOutputStream out,
+                     ByteArrayOutputStream err, String... args) throws IOException {
+        try (SocketChannel connection = DaemonClient.connect(socket)) {
+            Assertions.assertNotNull(connection);
+            return DaemonClient.run(connection, args, tempDirectory, settings, in, out, err);
+        }
+    }
+
+    /*
+     * Test Cases
+     */
+
+    @Test // a job sent to the daemon gives the output of the command line, with names relative to the client
+    public void jobsRunLikeTheCommandLine() throws IOException {
+        String input = "first line" + System.lineSeparator() + "second line" + System.lineSeparator();
+        Path inputFile = createFile(input, "input.txt");
+        String[] args = {"-r", "line", "row", "-s", "!", inputFile.toString()};
+        Main.main(args);
+        String expected = capture.stdout();
+
+        Path socket = tempDirectory.resolve("daemon.sock");
+        try (Daemon daemon = Daemon.start(socket, 2)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ByteArrayOutputStream err = new ByteArrayOutputStream();
+            Assertions.assertEquals(0, send(socket, new Properties(), out, err, "-r", "line", "row", "-s", "!", "input.txt"));
+            Assertions.assertEquals(expected, out.toString(Charset.defaultCharset()));
+            Assertions.assertEquals("", err.toString(Charset.defaultCharset()));
+
+            // an output file is created in the client's working directory
+            out.reset();
+            Assertions.assertEquals(0, send(socket, new Properties(), out, err, "-n", "3", "-o", "output.txt", "input.txt"));
+            Assertions.assertEquals("001 first line" + System.lineSeparator() + "002 second line" + System.lineSeparator(),
+                    Files.readString(tempDirectory.resolve("output.txt"), StandardCharsets.UTF_8));
+            Assertions.assertEquals("", out.toString(Charset.defaultCharset()));
+
+            // errors come back on the standard error
+            Assertions.assertEquals(0, send(socket, new Properties(), out, err, "-n", "0", "input.txt"));
+            Assertions.assertEquals(usageStr, err.toString(Charset.defaultCharset()));
+        }
+        Assertions.assertFalse(Files.exists(socket));
+    }
+
+    @Test // the client's settings apply to its job, not the daemon's
+    public void jobsUseTheClientSettings() throws IOException {
+        Path inputFile = createFile("x" + System.lineSeparator(), "input.txt");
+        Path socket = tempDirectory.resolve("daemon.sock");
+        try (Daemon daemon = Daemon.start(socket, 1)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ByteArrayOutputStream err = new ByteArrayOutputStream();
+            Assertions.assertEquals(0, send(socket, new Properties(), out, err, "-n", "12", inputFile.toString()));
+            Assertions.assertEquals(usageStr, err.toString(Charset.defaultCharset()));
+
+            Properties settings = new Properties();
+            settings.setProperty("textprocessor.widePadding", "true");
+            err.reset();
+            Assertions.assertEquals(0, send(socket, settings, out, err, "-n", "12", inputFile.toString()));
+            Assertions.assertEquals("000000000001 x" + System.lineSeparator(), out.toString(Charset.defaultCharset()));
+            Assertions.assertEquals("", err.toString(Charset.defaultCharset()));
+        }
+    }
+
+    @Test // a job reading the standard input gets the client's
+    public void jobsReadTheClientInput() throws IOException {
+        StringBuilder input = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 1; i <= 10000; i++) {
+            input.append("line ").append(i).append(System.lineSeparator());
+            expected.append("row ").append(i).append(System.lineSeparator());
+        }
+
+        Path socket = tempDirectory.resolve("daemon.sock");
+        try (Daemon daemon = Daemon.start(socket, 1)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ByteArrayOutputStream err = new ByteArrayOutputStream();
+            ByteArrayInputStream in = new ByteArrayInputStream(input.toString().getBytes(Charset.defaultCharset()));
+            Assertions.assertEquals(0, send(socket, new Properties(), in, out, err, "-r", "line", "row", "-"));
+            Assertions.assertEquals(expected.toString(), out.toString(Charset.defaultCharset()));
+            Assertions.assertEquals("", err.toString(Charset.defaultCharset()));
+        }
+    }
+
+    @Test // without a daemon there is nothing to connect to, and a second daemon is refused
+    public void onlyOneDaemonPerSocket() throws IOException {
+        Path socket = tempDirectory.resolve("daemon.sock");
+        Assertions.assertNull(DaemonClient.connect(socket));
+
+        try (Daemon daemon = Daemon.start(socket, 1)) {
+            IOException exception = Assertions.assertThrows(IOException.class, () -> Daemon.start(socket, 1));
+            Assertions.assertEquals("A daemon is already listening on " + socket, exception.getMessage());
+        }
+
+        // a socket left behind is replaced
+        Files.createFile(socket);
+        try (Daemon daemon = Daemon.start(socket, 1)) {
+            try (SocketChannel connection = DaemonClient.connect(socket)) {
+                Assertions.assertNotNull(connection);
+            }
+        }
+    }
+
+    @Test // a socket directory that others can use is refused, by the daemon and by the client
+    public void onlyPrivateDirectoriesAreUsed() throws IOException {
+        Path directory = Files.createDirectory(tempDirectory.resolve("shared"));
+        Files.setPosixFilePermissions(directory, PosixFilePermissions.fromString("rwxr-xr-x"));
+        Path socket = directory.resolve("daemon.sock");
+
+        IOException exception = Assertions.assertThrows(IOException.class, () -> Daemon.start(socket, 1));
+        Assertions.assertEquals("The directory of the socket is not private to its owner: " + directory,
+                exception.getMessage());
+        Assertions.assertNull(DaemonClient.connect(socket));
+
+        Files.setPosixFilePermissions(directory, PosixFilePermissions.fromString("rwx------"));
+        try (Daemon daemon = Daemon.start(socket, 1)) {
+            Assertions.assertEquals(PosixFilePermissions.fromString("rw-------"), Files.getPosixFilePermissions(socket));
+            try (SocketChannel connection = DaemonClient.connect(socket)) {
+                Assertions.assertNotNull(connection);
+            }
+            // nothing is left of where the socket was bound
+            try (Stream<Path> files = Files.list(directory)) {
+                Assertions.assertEquals(List.of(socket), files.collect(Collectors.toList()));
+            }
+        }
+    }
+}
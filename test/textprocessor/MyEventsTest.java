@@ -0,0 +1,90 @@
+package textprocessor;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+// starting the flight recorder takes a while
+@Timeout(value = 20, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+public class MyEventsTest {
+    @TempDir
+    Path tempDirectory;
+
+    @RegisterExtension
+    OutputCapture capture = new OutputCapture();
+
+    /*
+     * Test Utilities
+     */
+
+    private List<RecordedEvent> record(TextProcessor utility) throws Exception {
+        Path recordingFile = tempDirectory.resolve("run.jfr");
+        try (Recording recording = new Recording(Configuration.create(Path.of("jfr", "textprocessor.jfc")))) {
+            recording.start();
+            utility.textprocessor();
+            recording.stop();
+            recording.dump(recordingFile);
+        }
+        return RecordingFile.readAllEvents(recordingFile).stream()
+                .filter(event -> event.getEventType().getName().startsWith("textprocessor."))
+                .collect(Collectors.toList());
+    }
+
+    private List<RecordedEvent> named(List<RecordedEvent> events, String name) {
+        return events.stream()
+                .filter(event -> event.getEventType().getName().equals(name))
+                .collect(Collectors.toList());
+    }
+
+    /*
+     * Test Cases
+     */
+
+    @Test // a recorded run reports the file, its stages and the output with their counts
+    public void runIsRecorded() throws Exception {
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            input.append("line ").append(i).append(System.lineSeparator());
+        }
+        Path inputFile = Files.write(tempDirectory.resolve("input.txt"), input.toString().getBytes(StandardCharsets.UTF_8));
+        Path outputFile = tempDirectory.resolve("output.txt");
+
+        TextProcessor utility = new TextProcessor();
+        utility.setFilepath(inputFile.toString());
+        utility.setOutputFile(outputFile.toString());
+        utility.setReplaceText("line", "row");
+
+        List<RecordedEvent> events = record(utility);
+
+        List<RecordedEvent> opened = named(events, "textprocessor.FileOpen");
+        Assertions.assertEquals(1, opened.size());
+        Assertions.assertEquals(Files.size(inputFile), opened.get(0).getLong("size"));
+
+        List<RecordedEvent> read = named(events, "textprocessor.FileRead");
+        Assertions.assertEquals(1, read.size());
+        Assertions.assertEquals(inputFile.toString(), read.get(0).getString("path"));
+        Assertions.assertEquals(100, read.get(0).getLong("linesRead"));
+        Assertions.assertEquals(100, read.get(0).getLong("replacements"));
+        Assertions.assertEquals(Files.size(outputFile), read.get(0).getLong("bytesWritten"));
+
+        Assertions.assertEquals(ProcessingStats.Phase.values().length, named(events, "textprocessor.Stage").size());
+    }
+
+    @Test // without a recording the events are not needed
+    public void statsAreOnlyNeededWhenRecording() {
+        Assertions.assertFalse(ProcessingEvents.needStats());
+    }
+}
@@ -1,4 +1,4 @@
-package edu.gatech.seclass.textprocessor;
+package textprocessor;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
@@ -6,10 +6,26 @@ import org.junit.jupiter.api.Timeout;
 import org.junit.jupiter.api.extension.RegisterExtension;
 import org.junit.jupiter.api.io.TempDir;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Timeout(value = 1, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
 public class MyLibTest {
@@ -39,6 +55,12 @@ public class MyLibTest {
         return file;
     }
 
+    private void awaitFileContent(Path file, String expected) throws InterruptedException {
+        while (!expected.equals(getFileContent(file))) {
+            Thread.sleep(10);
+        }
+    }
+
     private String getFileContent(Path file) {
         try {
             return Files.readString(file, StandardCharsets.UTF_8);
@@ -87,4 +109,703 @@ public class MyLibTest {
         Assertions.assertTrue(capture.stderr().isEmpty());
         Assertions.assertEquals(expected, capture.stdout());
     }
+
+    @Test
+    public void streamingKeepsOriginalLineNumbers() {
+        StringBuilder input = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 1; i <= 50000; i++) {
+            input.append("line ").append(i % 10 == 0 ? "keep" : "drop").append(System.lineSeparator());
+            if (i % 10 == 0) {
+                expected.append(String.format("%06d", i)).append(" line keep").append(System.lineSeparator());
+            }
+        }
+
+        Path inputFile = createFile(input.toString());
+        Path outputFile = tempDirectory.resolve("output.txt");
+
+        TextProcessorInterface utility = new TextProcessor();
+        utility.setFilepath(inputFile.toString());
+        utility.setOutputFile(outputFile.toString());
+        utility.setKeepLines("keep");
+        utility.setAddPaddedLineNumber(6);
+
+        Assertions.assertDoesNotThrow(utility::textprocessor);
+        Assertions.assertEquals(expected.toString(), getFileContent(outputFile));
+    }
+
+    @Test
+    public void streamingRejectsMissingTrailingNewline() {
+        Path inputFile = createFile("first line" + System.lineSeparator() + "no newline");
+        Path outputFile = tempDirectory.resolve("output.txt");
+
+        TextProcessorInterface utility = new TextProcessor();
+        utility.setFilepath(inputFile.toString());
+        utility.setOutputFile(outputFile.toString());
+
+        TextProcessorException exception =
+                Assertions.assertThrows(TextProcessorException.class, utility::textprocessor);
+        Assertions.assertEquals("Last file element is not new line", exception.getMessage());
+        Assertions.assertFalse(Files.exists(outputFile));
+    }
+
+    @Test
+    public void configurationIsReusedAcrossFiles() {
+        String first = "Old line one" + System.lineSeparator();
+        String second = "old line two" + System.lineSeparator() + "OLD line three" + System.lineSeparator();
+
+        Path firstFile = createFile(first, "first.txt");
+        Path secondFile = createFile(second, "second.txt");
+        Path firstOutput = tempDirectory.resolve("first-output.txt");
+        Path secondOutput = tempDirectory.resolve("second-output.txt");
+
+        TextProcessorInterface utility = new TextProcessor();
+        utility.setCaseInsensitive(true);
+        utility.setReplaceText("old", "new");
+        utility.setSuffixLines("!");
+
+        utility.setFilepath(firstFile.toString());
+        utility.setOutputFile(firstOutput.toString());
+        Assertions.assertDoesNotThrow(utility::textprocessor);
+
+        utility.setFilepath(secondFile.toString());
+        utility.setOutputFile(secondOutput.toString());
+        Assertions.assertDoesNotThrow(utility::textprocessor);
+
+        Assertions.assertEquals("new line one!" + System.lineSeparator(), getFileContent(firstOutput));
+        Assertions.assertEquals("new line two!" + System.lineSeparator() + "new line three!" + System.lineSeparator(),
+                getFileContent(secondOutput));
+    }
+
+    @Test
+    public void paddingIsValidatedBeforeProcessing() {
+        Path inputFile = createFile("");
+
+        TextProcessorInterface utility = new TextProcessor();
+        utility.setFilepath(inputFile.toString());
+        utility.setAddPaddedLineNumber(10);
+
+        TextProcessorException exception =
+                Assertions.assertThrows(TextProcessorException.class, utility::textprocessor);
+        Assertions.assertEquals("Padding Value Out of Range", exception.getMessage());
+    }
+
+    @Test
+    public void memoryMappedInputMatchesDefaultReader() {
+        String input = "This is the first line." + System.lineSeparator()
+                + "  Second line, indented." + System.lineSeparator()
+                + System.lineSeparator()
+                + "Fourth line." + System.lineSeparator();
+        String expected = "01 This is the first line.!" + System.lineSeparator()
+                + "02   Second line, indented.!" + System.lineSeparator()
+                + "03 !" + System.lineSeparator()
+                + "04 Fourth line.!" + System.lineSeparator();
+
+        Path inputFile = createFile(input);
+
+        TextProcessor utility = new TextProcessor();
+        utility.setFilepath(inputFile.toString());
+        utility.setMemoryMapped(true);
+        utility.setAddPaddedLineNumber(2);
+        utility.setSuffixLines("!");
+
+        Assertions.assertDoesNotThrow(utility::textprocessor);
+        Assertions.assertTrue(capture.stderr().isEmpty());
+        Assertions.assertEquals(expected, capture.stdout());
+    }
+
+    @Test
+    public void caseSensitiveKeepSkipsOtherLines() {
+        String input = "keep this line" + System.lineSeparator()
+                + "Keep is capitalised here" + System.lineSeparator()
+                + "drop this one" + System.lineSeparator()
+                + "and keep this" + System.lineSeparator();
+        String expected = "1 keep this line" + System.lineSeparator()
+                + "4 and keep this" + System.lineSeparator();
+
+        Path inputFile = createFile(input);
+
+        TextProcessorInterface utility = new TextProcessor();
+        utility.setFilepath(inputFile.toString());
+        utility.setKeepLines("keep");
+        utility.setAddPaddedLineNumber(1);
+
+        Assertions.assertDoesNotThrow(utility::textprocessor);
+        Assertions.assertTrue(capture.stderr().isEmpty());
+        Assertions.assertEquals(expected, capture.stdout());
+    }
+
+    @Test
+    public void keepLinesMatchingAnySubstring() {
+        String input = "E1001 disk full" + System.lineSeparator()
+                + "ok" + System.lineSeparator()
+                + "e2002 timeout" + System.lineSeparator()
+                + "E3003 ignored" + System.lineSeparator();
+        String expected = "1 E1001 disk full" + System.lineSeparator()
+                + "3 e2002 timeout" + System.lineSeparator();
+
+        Path inputFile = createFile(input);
+
+        TextProcessor utility = new TextProcessor();
+        utility.setFilepath(inputFile.toString());
+        utility.setKeepLines(List.of("E1001", "E2002", "E4004"));
+        utility.setCaseInsensitive(true);
+        utility.setAddPaddedLineNumber(1);
+
+        Assertions.assertDoesNotThrow(utility::textprocessor);
+        Assertions.assertTrue(capture.stderr().isEmpty());
+        Assertions.assertEquals(expected, capture.stdout());
+    }
+
+    @Test
+    public void replaceEveryOccurrence() {
+        String input = "a+b=c, a+b=d" + System.lineSeparator();
+        String expected = "x=c, x=d" + System.lineSeparator();
+
+        Path inputFile = createFile(input);
+
+        TextProcessor utility = new TextProcessor();
+        utility.setFilepath(inputFile.toString());
+        utility.setReplaceText("a+b", "x", TextProcessor.ALL_OCCURRENCES);
+
+        Assertions.assertDoesNotThrow(utility::textprocessor);
+        Assertions.assertTrue(capture.stderr().isEmpty());
+        Assertions.assertEquals(expected, capture.stdout());
+    }
+
+    @Test
+    public void unchangedLinesAreCopiedAsBytes() throws IOException {
+        // "\r\n" is normalised and the malformed byte is replaced, as on the other paths
+        byte[] input = ("keep plain" + System.lineSeparator()
+                + "drop this" + System.lineSeparator()
+                + "keep crlf\r\n"
+                + "keep \u00e9" + System.lineSeparator()).getBytes(StandardCharsets.ISO_8859_1);
+        String decoded = new String(input, Charset.defaultCharset());
+        String expected = decoded.replace("drop this" + System.lineSeparator(), "")
+                .replace("\r\n", System.lineSeparator())
+                .replace(System.lineSeparator(), "!" + System.lineSeparator());
+
+        Path inputFile = Files.write(tempDirectory.resolve("input.txt"), input);
+        Path outputFile = tempDirectory.resolve("output.txt");
+
+        TextProcessorInterface utility = new TextProcessor();
+        utility.setFilepath(inputFile.toString());
+        utility.setOutputFile(outputFile.toString());
+        utility.setKeepLines("keep");
+        utility.setSuffixLines("!");
+
+        Assertions.assertDoesNotThrow(utility::textprocessor);
+        Assertions.assertTrue(capture.stdout().isEmpty());
+        Assertions.assertArrayEquals(expected.getBytes(Charset.defaultCharset()), Files.readAllBytes(outputFile));
+    }
+
+    @Test
+    public void noOptionsCopiesTheFile() throws IOException {
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            input.append("line ").append(i).append(i == 2500 ? "\r\n" : System.lineSeparator());
+        }
+        String expected = input.toString().replace("\r\n", System.lineSeparator());
+
+        Path inputFile = createFile(input.toString());
+        Path outputFile = tempDirectory.resolve("output.txt");
+
+        TextProcessorInterface utility = new TextProcessor();
+        utility.setFilepath(inputFile.toString());
+        utility.setOutputFile(outputFile.toString());
+
+        Assertions.assertDoesNotThrow(utility::textprocessor);
+        Assertions.assertEquals(expected, getFileContent(outputFile));
+    }
+
+    @Test
+    public void widePaddingAllowsMoreDigits() {
+        String input = "first" + System.lineSeparator() + "second" + System.lineSeparator();
+        String expected = "000000000001 first" + System.lineSeparator()
+                + "000000000002 second" + System.lineSeparator();
+
+        Path inputFile = createFile(input);
+
+        TextProcessor utility = new TextProcessor();
+        utility.setFilepath(inputFile.toString());
+        utility.setWidePadding(true);
+        utility.setAddPaddedLineNumber(12);
+
+        Assertions.assertDoesNotThrow(utility::textprocessor);
+        Assertions.assertTrue(capture.stderr().isEmpty());
+        Assertions.assertEquals(expected, capture.stdout());
+
+        utility.setAddPaddedLineNumber(TextProcessor.MAX_WIDE_PADDING + 1);
+        TextProcessorException exception =
+                Assertions.assertThrows(TextProcessorException.class, utility::textprocessor);
+        Assertions.assertEquals("Padding Value Out of Range", exception.getMessage());
+    }
+
+    @Test
+    public void whitespaceIsRemovedFromBytes() throws IOException {
+        // only "\s" whitespace is removed, and the malformed byte is replaced, as on the other paths
+        byte[] input = ("keep  a\tb\u000Bc" + System.lineSeparator()
+                + "drop this" + System.lineSeparator()
+                + "keep-without-whitespace" + System.lineSeparator()
+                + "keep \u00e9 \u00a0" + System.lineSeparator()).getBytes(StandardCharsets.ISO_8859_1);
+        String decoded = new String(input, Charset.defaultCharset());
+        StringBuilder expected = new StringBuilder();
+        for (String line : decoded.split(System.lineSeparator())) {
+            if (line.contains("keep")) {
+                expected.append(line.replaceAll("\\s", "")).append("#").append(System.lineSeparator());
+            }
+        }
+
+        Path inputFile = Files.write(tempDirectory.resolve("input.txt"), input);
+        Path outputFile = tempDirectory.resolve("output.txt");
+
+        TextProcessorInterface utility = new TextProcessor();
+        utility.setFilepath(inputFile.toString());
+        utility.setOutputFile(outputFile.toString());
+        utility.setKeepLines("keep");
+        utility.setRemoveWhitespace(true);
+        utility.setSuffixLines("#");
+
+        Assertions.assertDoesNotThrow(utility::textprocessor);
+        Assertions.assertArrayEquals(expected.toString().getBytes(Charset.defaultCharset()),
+                Files.readAllBytes(outputFile));
+    }
+
+    @Test // the statistics count what was read, kept, replaced and written
+    public void statsCountLinesAndReplacements() throws Exception {
+        String input = "one a a" + System.lineSeparator() + "two" + System.lineSeparator()
+                + "three a" + System.lineSeparator();
+        Path inputFile = createFile(input);
+        Path outputFile = tempDirectory.resolve("output.txt");
+
+        TextProcessor utility = new TextProcessor();
+        utility.setFilepath(inputFile.toString());
+        utility.setOutputFile(outputFile.toString());
+        utility.setReplaceText("a", "b", TextProcessor.ALL_OCCURRENCES);
+
+        ProcessingStats stats = utility.textprocessorWithStats();
+        Assertions.assertEquals(Files.size(inputFile), stats.getBytesRead());
+        Assertions.assertEquals(3, stats.getLinesRead());
+        Assertions.assertEquals(3, stats.getLinesKept());
+        Assertions.assertEquals(3, stats.getReplacements());
+        Assertions.assertEquals(Files.size(outputFile), stats.getBytesWritten());
+        Assertions.assertTrue(stats.getWallNanos() > 0);
+
+        // only the first occurrence in each line
+        Files.delete(outputFile);
+        utility.setReplaceText("a", "b");
+        Assertions.assertEquals(2, utility.textprocessorWithStats().getReplacements());
+    }
+
+    @Test // lines dropped by -k are read but not kept, also when copied as bytes
+    public void statsCountKeptLines() throws Exception {
+        String input = "keep 1" + System.lineSeparator() + "drop" + System.lineSeparator()
+                + "keep 2" + System.lineSeparator() + "drop" + System.lineSeparator();
+        Path inputFile = createFile(input);
+
+        TextProcessor utility = new TextProcessor();
+        utility.setFilepath(inputFile.toString());
+        utility.setKeepLines("keep");
+        utility.setSuffixLines("!");
+
+        ProcessingStats stats = utility.textprocessorWithStats();
+        Assertions.assertEquals(4, stats.getLinesRead());
+        Assertions.assertEquals(2, stats.getLinesKept());
+        Assertions.assertEquals(0, stats.getReplacements());
+        Assertions.assertEquals(capture.stdout().length(), stats.getBytesWritten());
+    }
+
+    @Test // a batch runs the same configuration over every file, and reports the files that fail
+    public void batchProcessesEveryFile() throws Exception {
+        Path inputDirectory = Files.createDirectory(tempDirectory.resolve("in"));
+        for (int i = 0; i < 20; i++) {
+            createFile("keep " + i + System.lineSeparator() + "drop" + System.lineSeparator(), "in/file" + i + ".txt");
+        }
+        Path missing = tempDirectory.resolve("missing.txt");
+
+        TextProcessor configuration = new TextProcessor();
+        configuration.setKeepLines("keep");
+        configuration.setSuffixLines("!");
+        BatchProcessor batch = new BatchProcessor(configuration, tempDirectory.resolve("out/{file}").toString());
+        batch.setConcurrency(4);
+
+        Map<Path, TextProcessorException> failures = batch.process(List.of(inputDirectory.toString(), missing.toString()));
+        Assertions.assertEquals(Set.of(missing), failures.keySet());
+        Assertions.assertEquals("Error reading the file", failures.get(missing).getMessage());
+        for (int i = 0; i < 20; i++) {
+            Assertions.assertEquals("keep " + i + "!" + System.lineSeparator(),
+                    getFileContent(tempDirectory.resolve("out").resolve("file" + i + ".txt")));
+        }
+
+        // an invalid configuration fails before any file is processed
+        configuration.setReplaceText("a", "b");
+        TextProcessorException exception = Assertions.assertThrows(TextProcessorException.class,
+                () -> batch.process(List.of(inputDirectory.toString())));
+        Assertions.assertEquals("1 or more parameters is missing or invalid", exception.getMessage());
+    }
+
+    @Test // output templates take the name and extension of each input file
+    public void batchOutputTemplates() {
+        Assertions.assertTrue(BatchProcessor.isTemplate("out/{name}.txt"));
+        Assertions.assertFalse(BatchProcessor.isTemplate("out/name.txt"));
+        Assertions.assertEquals("out/app.2024.clean.log",
+                BatchProcessor.outputFor("out/{name}.clean.{ext}", Path.of("logs/app.2024.log")));
+        Assertions.assertEquals("README-README.",
+                BatchProcessor.outputFor("{file}-{name}.{ext}", Path.of("README")));
+    }
+
+    @Test // a stream or channel gives the same output as a file with the same lines
+    public void streamInputMatchesFile() throws Exception {
+        String input = "one a" + System.lineSeparator() + "two" + System.lineSeparator()
+                + "three a" + System.lineSeparator();
+        Path inputFile = createFile(input);
+        TextProcessor utility = new TextProcessor();
+        utility.setFilepath(inputFile.toString());
+        utility.setReplaceText("a", "b");
+        utility.setAddPaddedLineNumber(2);
+        utility.textprocessor();
+        String expected = capture.stdout();
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        utility.setStandardOutput(output);
+        utility.setInput(new ByteArrayInputStream(input.getBytes(Charset.defaultCharset())));
+        ProcessingStats stats = utility.textprocessorWithStats();
+        Assertions.assertEquals(expected, output.toString(Charset.defaultCharset()));
+        Assertions.assertEquals(Files.size(inputFile), stats.getBytesRead());
+        Assertions.assertEquals(3, stats.getLinesRead());
+
+        Path outputFile = tempDirectory.resolve("output.txt");
+        utility.setOutputFile(outputFile.toString());
+        utility.setInput(Channels.newChannel(new ByteArrayInputStream(input.getBytes(Charset.defaultCharset()))));
+        utility.textprocessor();
+        Assertions.assertEquals(expected, getFileContent(outputFile));
+    }
+
+    @Test // a stream must end with a new line too, and no output file is left behind
+    public void streamWithoutLastNewLine() {
+        String input = "one" + System.lineSeparator() + "two";
+        Path outputFile = tempDirectory.resolve("output.txt");
+
+        TextProcessor utility = new TextProcessor();
+        utility.setInput(new ByteArrayInputStream(input.getBytes(Charset.defaultCharset())));
+        utility.setOutputFile(outputFile.toString());
+        TextProcessorException exception = Assertions.assertThrows(TextProcessorException.class, utility::textprocessor);
+        Assertions.assertEquals("Last file element is not new line", exception.getMessage());
+        Assertions.assertFalse(Files.exists(outputFile));
+    }
+
+    @Test // line buffered, each line of a stream is written before the next one is read
+    public void streamLinesAreWrittenAsTheyArrive() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        List<String> written = new ArrayList<>();
+        InputStream input = new InputStream() {
+            private final Iterator<String> lines = List.of("first", "second").iterator();
+
+            @Override
+            public int read() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public int read(byte[] bytes, int offset, int length) {
+                written.add(output.toString(Charset.defaultCharset()));
+                if (!lines.hasNext()) {
+                    return -1;
+                }
+                byte[] line = (lines.next() + System.lineSeparator()).getBytes(Charset.defaultCharset());
+                System.arraycopy(line, 0, bytes, offset, line.length);
+                return line.length;
+            }
+        };
+
+        TextProcessor utility = new TextProcessor();
+        utility.setInput(input);
+        utility.setStandardOutput(output);
+        utility.setLineBuffered(true);
+        utility.setSuffixLines("!");
+        utility.textprocessor();
+
+        String first = "first!" + System.lineSeparator();
+        Assertions.assertEquals(List.of("", first, first + "second!" + System.lineSeparator()), written);
+    }
+
+    @Test // following a file processes the lines appended to it, also after it is rotated
+    @Timeout(value = 10, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    public void followProcessesAppendedLines() throws Exception {
+        String separator = System.lineSeparator();
+        Path inputFile = createFile("a line" + separator);
+        Path outputFile = tempDirectory.resolve("output.txt");
+
+        TextProcessor utility = new TextProcessor();
+        utility.setFilepath(inputFile.toString());
+        utility.setOutputFile(outputFile.toString());
+        utility.setReplaceText("line", "row");
+        utility.setAddPaddedLineNumber(1);
+        utility.setFollow(true);
+        Thread follower = new Thread(() -> Assertions.assertDoesNotThrow(utility::textprocessor));
+        // a failed test must not leave the JVM running
+        follower.setDaemon(true);
+        follower.start();
+        awaitFileContent(outputFile, "1 a row" + separator);
+
+        // a line is only processed once it is complete
+        Files.writeString(inputFile, "b li", StandardOpenOption.APPEND);
+        Thread.sleep(100);
+        Files.writeString(inputFile, "ne" + separator, StandardOpenOption.APPEND);
+        awaitFileContent(outputFile, "1 a row" + separator + "2 b row" + separator);
+
+        // the rest of a renamed file is read before the new one
+        Path rotatedFile = Files.move(inputFile, tempDirectory.resolve("input.txt.1"));
+        Files.writeString(rotatedFile, "c line" + separator, StandardOpenOption.APPEND);
+        Files.writeString(inputFile, "d line" + separator);
+        String expected = "1 a row" + separator + "2 b row" + separator + "3 c row" + separator + "4 d row" + separator;
+        awaitFileContent(outputFile, expected);
+
+        // interrupting the thread stops following, and keeps the output
+        follower.interrupt();
+        follower.join();
+        Assertions.assertEquals(expected, getFileContent(outputFile));
+    }
+
+    @Test // a file truncated in the middle of a line ends that line, which is not joined to the new text
+    @Timeout(value = 10, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    public void followTruncatedMidLine() throws Exception {
+        String separator = System.lineSeparator();
+        Path inputFile = createFile("a line" + separator + "half");
+        Path outputFile = tempDirectory.resolve("output.txt");
+
+        TextProcessor utility = new TextProcessor();
+        utility.setFilepath(inputFile.toString());
+        utility.setOutputFile(outputFile.toString());
+        utility.setReplaceText("line", "row");
+        utility.setAddPaddedLineNumber(1);
+        utility.setFollow(true);
+        Thread follower = new Thread(() -> Assertions.assertDoesNotThrow(utility::textprocessor));
+        follower.setDaemon(true);
+        follower.start();
+        awaitFileContent(outputFile, "1 a row" + separator);
+
+        // written again from the start past where the old file was read, as a truncation only seen afterwards
+        try (FileChannel channel = FileChannel.open(inputFile, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(("a new line, longer than the old file" + separator)
+                    .getBytes(Charset.defaultCharset())), 0);
+        }
+        awaitFileContent(outputFile,
+                "1 a row" + separator + "2 half" + separator + "3 a new row, longer than the old file" + separator);
+
+        follower.interrupt();
+        follower.join();
+    }
+
+    @Test // interrupting a run following a growing file keeps every line written so far in the output file
+    @Timeout(value = 10, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    public void followInterruptedWhileTheFileGrows() throws Exception {
+        String separator = System.lineSeparator();
+        for (int round = 0; round < 5; round++) {
+            Path inputFile = createFile("line 0" + separator, "input" + round + ".txt");
+            Path outputFile = tempDirectory.resolve("output" + round + ".txt");
+
+            AtomicBoolean writing = new AtomicBoolean(true);
+            Thread writer = new Thread(() -> {
+                try {
+                    for (int i = 1; writing.get(); i++) {
+                        Files.writeString(inputFile, "line " + i + separator, StandardOpenOption.APPEND);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            writer.setDaemon(true);
+            writer.start();
+
+            TextProcessor utility = new TextProcessor();
+            utility.setFilepath(inputFile.toString());
+            utility.setOutputFile(outputFile.toString());
+            utility.setReplaceText("line", "row");
+            utility.setFollow(true);
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            AtomicBoolean stillInterrupted = new AtomicBoolean();
+            Thread follower = new Thread(() -> {
+                try {
+                    utility.textprocessor();
+                    stillInterrupted.set(Thread.currentThread().isInterrupted());
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            });
+            follower.setDaemon(true);
+            follower.start();
+            while (!Files.exists(outputFile) || Files.size(outputFile) == 0) {
+                Thread.sleep(1);
+            }
+            Thread.sleep(20L * round);
+
+            follower.interrupt();
+            follower.join();
+            writing.set(false);
+            writer.join();
+            Assertions.assertNull(failure.get());
+            Assertions.assertTrue(stillInterrupted.get());
+
+            // the lines followed are the first lines of the input, whole and in order
+            String[] rows = getFileContent(outputFile).split(separator, -1);
+            Assertions.assertTrue(rows.length > 1);
+            Assertions.assertEquals("", rows[rows.length - 1]);
+            for (int i = 0; i < rows.length - 1; i++) {
+                Assertions.assertEquals("row " + i, rows[i]);
+            }
+        }
+    }
+
+    @Test // an incremental run gives the output of a full run, but only processes the chunks that changed
+    @Timeout(value = 10, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    public void incrementalRunReusesUnchangedChunks() throws Exception {
+        String separator = System.lineSeparator();
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            input.append("line ").append(i).append(" of the input file").append(separator);
+        }
+        Path inputFile = createFile(input.toString());
+        Path outputFile = tempDirectory.resolve("output.txt");
+        Path fullOutputFile = tempDirectory.resolve("full.txt");
+
+        TextProcessor utility = new TextProcessor();
+        utility.setFilepath(inputFile.toString());
+        utility.setOutputFile(outputFile.toString());
+        utility.setReplaceText("line", "row");
+        utility.setAddPaddedLineNumber(6);
+        utility.setIncremental(true);
+        TextProcessor full = new TextProcessor();
+        full.setFilepath(inputFile.toString());
+        full.setOutputFile(fullOutputFile.toString());
+        full.setReplaceText("line", "row");
+        full.setAddPaddedLineNumber(6);
+
+        Assertions.assertEquals(100000, utility.textprocessorWithStats().getLinesRead());
+        Assertions.assertTrue(Files.exists(tempDirectory.resolve("output.txt.manifest")));
+        // nothing has changed
+        Assertions.assertEquals(0, utility.textprocessorWithStats().getLinesRead());
+
+        // an edited line and an appended one
+        String edited = input.toString().replace("line 50000 of", "LINE 50000 of") + "appended line" + separator;
+        Files.writeString(inputFile, edited, Charset.defaultCharset());
+        Assertions.assertTrue(utility.textprocessorWithStats().getLinesRead() < 50000);
+        full.textprocessor();
+        Assertions.assertEquals(getFileContent(fullOutputFile), getFileContent(outputFile));
+
+        // an inserted line changes the numbers of the lines after it
+        Files.writeString(inputFile, edited.replace("line 90000 of", "inserted line" + separator + "line 90000 of"),
+                Charset.defaultCharset());
+        Assertions.assertTrue(utility.textprocessorWithStats().getLinesRead() < 50000);
+        Files.delete(fullOutputFile);
+        full.textprocessor();
+        Assertions.assertEquals(getFileContent(fullOutputFile), getFileContent(outputFile));
+
+        // another configuration processes everything again
+        utility.setSuffixLines("!");
+        Assertions.assertEquals(100002, utility.textprocessorWithStats().getLinesRead());
+    }
+
+    @Test // -w after -n strips the space after the line number, with -i allowing the two together
+    public void whitespaceIsStrippedAfterNumbering() throws Exception {
+        String separator = System.lineSeparator();
+        Path inputFile = createFile("Foo bar baz" + separator + "other" + separator + "foo x" + separator);
+        Path outputFile = tempDirectory.resolve("output.txt");
+
+        TextProcessor utility = new TextProcessor();
+        utility.setFilepath(inputFile.toString());
+        utility.setOutputFile(outputFile.toString());
+        utility.setCaseInsensitive(true);
+        utility.setKeepLines("foo");
+        utility.setAddPaddedLineNumber(2);
+        utility.setRemoveWhitespace(true);
+        utility.textprocessor();
+
+        Assertions.assertEquals("01Foobarbaz" + separator + "03foox" + separator, getFileContent(outputFile));
+    }
+
+    @Test // a second run over the same file writes the kept output, and a changed file is processed again
+    public void resultCacheKeepsOutputUntilTheFileChanges() throws Exception {
+        String separator = System.lineSeparator();
+        Path inputFile = createFile("first line" + separator + "second line" + separator);
+        Path outputFile = tempDirectory.resolve("output.txt");
+        ResultCache cache = new ResultCache(1024);
+
+        TextProcessor utility = new TextProcessor();
+        utility.setFilepath(inputFile.toString());
+        utility.setReplaceText("line", "row");
+        utility.setResultCache(cache);
+        Assertions.assertEquals(2, utility.textprocessorWithStats().getLinesRead());
+        ProcessingStats stats = utility.textprocessorWithStats();
+        Assertions.assertEquals(0, stats.getLinesRead());
+        Assertions.assertEquals(0, stats.getBytesRead());
+        String expected = "first row" + separator + "second row" + separator;
+        Assertions.assertEquals(expected + expected, capture.stdout());
+        Assertions.assertEquals(1, cache.getHits());
+        Assertions.assertEquals(1, cache.getMisses());
+        Assertions.assertEquals(expected.length(), cache.getBytes());
+
+        // the output file gets the same output, and is still not replaced
+        utility.setOutputFile(outputFile.toString());
+        utility.textprocessor();
+        Assertions.assertEquals(expected, getFileContent(outputFile));
+        Assertions.assertEquals(2, cache.getHits());
+        TextProcessorException exception = Assertions.assertThrows(TextProcessorException.class, utility::textprocessor);
+        Assertions.assertEquals("File Already Exists", exception.getMessage());
+
+        // another version of the file
+        Files.writeString(inputFile, "third line" + separator, Charset.defaultCharset());
+        Files.delete(outputFile);
+        Assertions.assertEquals(1, utility.textprocessorWithStats().getLinesRead());
+        Assertions.assertEquals("third row" + separator, getFileContent(outputFile));
+        Assertions.assertEquals(2, cache.getMisses());
+
+        // another configuration
+        Files.delete(outputFile);
+        utility.setSuffixLines("!");
+        Assertions.assertEquals(1, utility.textprocessorWithStats().getLinesRead());
+        Assertions.assertEquals("third row!" + separator, getFileContent(outputFile));
+        Assertions.assertEquals(3, cache.getMisses());
+        Assertions.assertEquals(3, cache.size());
+
+        // the output kept while it was written to the file
+        Files.delete(outputFile);
+        Assertions.assertEquals(0, utility.textprocessorWithStats().getLinesRead());
+        Assertions.assertEquals("third row!" + separator, getFileContent(outputFile));
+        Assertions.assertEquals(4, cache.getHits());
+    }
+
+    @Test // the results used least recently are evicted to stay within the budget
+    public void resultCacheEvictsLeastRecentlyUsed() throws Exception {
+        String line = "0123456789" + System.lineSeparator();
+        ResultCache cache = new ResultCache(2L * line.length());
+        TextProcessor[] utilities = new TextProcessor[3];
+        for (int i = 0; i < utilities.length; i++) {
+            utilities[i] = new TextProcessor();
+            utilities[i].setFilepath(createFile(line, "input" + i + ".txt").toString());
+            utilities[i].setResultCache(cache);
+        }
+
+        utilities[0].textprocessor();
+        utilities[1].textprocessor();
+        utilities[0].textprocessor();
+        // evicts the second file's output
+        utilities[2].textprocessor();
+        Assertions.assertEquals(1, cache.getEvictions());
+        Assertions.assertEquals(2, cache.size());
+        Assertions.assertEquals(2L * line.length(), cache.getBytes());
+
+        Assertions.assertEquals(0, utilities[0].textprocessorWithStats().getLinesRead());
+        Assertions.assertEquals(1, utilities[1].textprocessorWithStats().getLinesRead());
+        Assertions.assertEquals(2, cache.getEvictions());
+        Assertions.assertEquals(line.repeat(6), capture.stdout());
+
+        // an output larger than the budget is not kept
+        TextProcessor large = new TextProcessor();
+        large.setFilepath(createFile(line.repeat(3), "large.txt").toString());
+        large.setResultCache(cache);
+        large.textprocessor();
+        Assertions.assertEquals(3, large.textprocessorWithStats().getLinesRead());
+        Assertions.assertEquals(2, cache.size());
+    }
 }
@@ -0,0 +1,115 @@
+package textprocessor;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Scanner;
+
+@Timeout(value = 1, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+public class MyLineReaderTest {
+    // every terminator Scanner.nextLine() recognises, including some split across mapping windows
+    private static final String INPUT = "first\nsecond\r\nthird\rfourth\u2028fifth\u2029sixth\u0085"
+            + "\n\r\n" + "a much longer line that does not fit in a single window\n" + "\u00fcn\u00efc\u00f6d\u00e9\r\n" + "last";
+
+    @TempDir
+    Path tempDirectory;
+
+    /*
+     * Test Utilities
+     */
+
+    private Path createFile(String contents, Charset charset) throws IOException {
+        Path file = tempDirectory.resolve("input.txt");
+        Files.write(file, contents.getBytes(charset));
+        return file;
+    }
+
+    private List<String> readAll(LineSource source) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (source) {
+            String line;
+            while ((line = source.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    private List<String> readWithScanner(String contents) {
+        List<String> lines = new ArrayList<>();
+        Scanner scanner = new Scanner(contents);
+        while (scanner.hasNextLine()) {
+            lines.add(scanner.nextLine());
+        }
+        return lines;
+    }
+
+    /*
+     * Test Cases
+     */
+
+    @Test // the streaming reader splits lines exactly like Scanner
+    public void lineReaderMatchesScanner() throws IOException {
+        Assertions.assertEquals(readWithScanner(INPUT), readAll(new LineReader(new StringReader(INPUT))));
+    }
+
+    @Test // the mapped reader splits lines exactly like Scanner, whatever the window size
+    public void mappedReaderMatchesScanner() throws IOException {
+        Path file = createFile(INPUT, StandardCharsets.UTF_8);
+        List<String> expected = readWithScanner(INPUT);
+
+        for (long windowSize = 1; windowSize <= 16; windowSize++) {
+            Assertions.assertEquals(expected,
+                    readAll(new MappedLineReader(file, StandardCharsets.UTF_8, windowSize)),
+                    "window size " + windowSize);
+        }
+        Assertions.assertEquals(expected, readAll(new MappedLineReader(file, StandardCharsets.UTF_8)));
+    }
+
+    @Test // Latin-1 files only use '\u0085' as an extra terminator
+    public void mappedReaderHandlesLatin1() throws IOException {
+        String contents = "caf\u00e9\u0085na\u00efve\n";
+        Path file = createFile(contents, StandardCharsets.ISO_8859_1);
+
+        Assertions.assertEquals(readWithScanner(contents),
+                readAll(new MappedLineReader(file, StandardCharsets.ISO_8859_1, 3)));
+    }
+
+    @Test // an empty file has no lines
+    public void mappedReaderHandlesEmptyFile() throws IOException {
+        Path file = createFile("", StandardCharsets.UTF_8);
+
+        Assertions.assertTrue(readAll(new MappedLineReader(file, StandardCharsets.UTF_8)).isEmpty());
+    }
+
+    @Test // only bytes the UTF-8 decoder accepts are copied without decoding
+    public void utf8ValidationMatchesDecoder() {
+        byte[][] samples = {
+                "plain".getBytes(StandardCharsets.UTF_8),
+                "na\u00efve \u20ac \ud83d\ude00".getBytes(StandardCharsets.UTF_8),
+                {(byte) 0xC0, (byte) 0x80},                           // overlong
+                {(byte) 0xED, (byte) 0xA0, (byte) 0x80},              // surrogate
+                {(byte) 0xF4, (byte) 0x90, (byte) 0x80, (byte) 0x80}, // above U+10FFFF
+                {(byte) 0xE2, (byte) 0x82},                           // truncated
+                {'a', (byte) 0x80},                                   // stray continuation
+        };
+        for (byte[] sample : samples) {
+            String decoded = new String(sample, StandardCharsets.UTF_8);
+            boolean roundTrips = Arrays.equals(sample, decoded.getBytes(StandardCharsets.UTF_8));
+            Assertions.assertEquals(roundTrips,
+                    PassthroughProcessor.isValidUtf8(ByteBuffer.wrap(sample), 0, sample.length));
+        }
+    }
+}
@@ -1,4 +1,4 @@
-package edu.gatech.seclass.textprocessor;
+package textprocessor;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
@@ -6,7 +6,10 @@ import org.junit.jupiter.api.Timeout;
 import org.junit.jupiter.api.extension.RegisterExtension;
 import org.junit.jupiter.api.io.TempDir;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -520,4 +523,156 @@ public class MyMainTest {
         // input has not been modified
         Assertions.assertEquals(input, getFileContent(inputFile));
     }
-}
\ No newline at end of file
+
+    @Test // Test Case 28: duplicate lines are numbered by their own position
+    public void textprocessorTest28() throws IOException {
+        String input = "same" + System.lineSeparator()
+                + "other" + System.lineSeparator()
+                + "same" + System.lineSeparator()
+                + "same" + System.lineSeparator();
+        String expected = "1 same" + System.lineSeparator()
+                + "3 same" + System.lineSeparator()
+                + "4 same" + System.lineSeparator();
+
+        Path inputFile = createFile(input);
+        String[] args = {"-k", "same", "-n", "1", inputFile.toString()};
+        Main.main(args);
+
+        // output matched expected output
+        Assertions.assertEquals(expected, capture.stdout());
+        // no errors
+        Assertions.assertTrue(capture.stderr().isEmpty());
+        // input has not been modified
+        Assertions.assertEquals(input, getFileContent(inputFile));
+    }
+
+    @Test // Test Case 29: -K keeps the lines containing any substring listed in a file
+    public void textprocessorTest29() throws IOException {
+        String input = "error E1001 disk full" + System.lineSeparator()
+                + "all good" + System.lineSeparator()
+                + "error E2002 timeout" + System.lineSeparator()
+                + "error E3003 ignored" + System.lineSeparator();
+        String expected = "error E1001 disk full" + System.lineSeparator()
+                + "error E2002 timeout" + System.lineSeparator();
+
+        Path inputFile = createFile(input);
+        Path patternsFile = createFile("E1001" + System.lineSeparator() + "E2002" + System.lineSeparator()
+                + System.lineSeparator(), "patterns.txt");
+        String[] args = {"-K", patternsFile.toString(), inputFile.toString()};
+        Main.main(args);
+
+        // output matched expected output
+        Assertions.assertEquals(expected, capture.stdout());
+        // no errors
+        Assertions.assertTrue(capture.stderr().isEmpty());
+        // input has not been modified
+        Assertions.assertEquals(input, getFileContent(inputFile));
+    }
+
+    @Test // Test Case 30: -r treats both strings literally, like the library
+    public void textprocessorTest30() throws IOException {
+        String input = "abc costs $5 (a.c)" + System.lineSeparator();
+        String expected = "abc costs $5 ($1)" + System.lineSeparator();
+
+        Path inputFile = createFile(input);
+        String[] args = {"-r", "a.c", "$1", inputFile.toString()};
+        Main.main(args);
+
+        // output matched expected output
+        Assertions.assertEquals(expected, capture.stdout());
+        // no errors
+        Assertions.assertTrue(capture.stderr().isEmpty());
+        // input has not been modified
+        Assertions.assertEquals(input, getFileContent(inputFile));
+    }
+
+    @Test // Test Case 31: an -o template processes every file of a directory or glob in one run
+    public void textprocessorTest31() throws IOException {
+        Path inputDirectory = Files.createDirectory(tempDirectory.resolve("in"));
+        for (int i = 1; i <= 3; i++) {
+            createFile("line " + i + System.lineSeparator(), "in/day" + i + ".log");
+        }
+        createFile("other" + System.lineSeparator(), "in/notes.txt");
+
+        String template = tempDirectory.resolve("out").resolve("{name}.clean.{ext}").toString();
+        String[] args = {"-r", "line", "row", "-o", template, inputDirectory.resolve("*.log").toString()};
+        Main.main(args);
+
+        // no standard output
+        Assertions.assertTrue(capture.stdout().isEmpty());
+        // no errors
+        Assertions.assertTrue(capture.stderr().isEmpty());
+        // one output file per matching input file
+        for (int i = 1; i <= 3; i++) {
+            Assertions.assertEquals("row " + i + System.lineSeparator(),
+                    getFileContent(tempDirectory.resolve("out").resolve("day" + i + ".clean.log")));
+        }
+        Assertions.assertFalse(Files.exists(tempDirectory.resolve("out").resolve("notes.clean.txt")));
+
+        // a directory names all of its files, and existing outputs are reported per file
+        String[] again = {"-r", "line", "row", "-o", template, inputDirectory.toString()};
+        Main.main(again);
+        Assertions.assertEquals("other" + System.lineSeparator(),
+                getFileContent(tempDirectory.resolve("out").resolve("notes.clean.txt")));
+        Assertions.assertEquals(3, capture.stderr().lines().filter(line -> line.endsWith(": File Already Exists")).count());
+    }
+
+    @Test // Test Case 32: several input files without an -o template is an error
+    public void textprocessorTest32() throws IOException {
+        Path first = createFile("a" + System.lineSeparator(), "first.txt");
+        Path second = createFile("b" + System.lineSeparator(), "second.txt");
+        Path outputFile = tempDirectory.resolve("output.txt");
+        String[] args = {"-o", outputFile.toString(), first.toString(), second.toString()};
+        Main.main(args);
+
+        // usage is printed
+        Assertions.assertEquals(usageStr, capture.stderr());
+        // no output file is created
+        Assertions.assertFalse(Files.exists(outputFile));
+    }
+
+    @Test // Test Case 33: the input file "-" is the standard input
+    public void textprocessorTest33() {
+        String input = "first line" + System.lineSeparator() + "second line" + System.lineSeparator();
+        String expected = "first row!" + System.lineSeparator() + "second row!" + System.lineSeparator();
+
+        InputStream stdin = System.in;
+        System.setIn(new ByteArrayInputStream(input.getBytes(Charset.defaultCharset())));
+        try {
+            String[] args = {"-r", "line", "row", "-s", "!", "-"};
+            Main.main(args);
+        } finally {
+            System.setIn(stdin);
+        }
+
+        // output matched expected output
+        Assertions.assertEquals(expected, capture.stdout());
+        // no errors
+        Assertions.assertTrue(capture.stderr().isEmpty());
+    }
+
+    @Test // Test Case 34: -f cannot follow the files of a batch
+    public void textprocessorTest34() throws IOException {
+        Path inputFile = createFile("a" + System.lineSeparator(), "input.txt");
+        String template = tempDirectory.resolve("{name}.out").toString();
+        String[] args = {"-f", "-o", template, inputFile.toString()};
+        Main.main(args);
+
+        // usage is printed
+        Assertions.assertEquals(usageStr, capture.stderr());
+        // no output file is created
+        Assertions.assertFalse(Files.exists(tempDirectory.resolve("input.out")));
+    }
+
+    @Test // Test Case 35: with -i, -w can be combined with -n and strips the space after the number, not the suffix
+    public void textprocessorTest35() throws IOException {
+        String separator = System.lineSeparator();
+        Path inputFile = createFile("Foo bar baz" + separator + "no match" + separator + "\tfoo  x" + separator,
+                "input.txt");
+        String[] args = {"-i", "-k", "foo", "-n", "2", "-w", "-s", " !", inputFile.toString()};
+        Main.main(args);
+
+        Assertions.assertEquals("01Foobarbaz !" + separator + "03foox !" + separator, capture.stdout());
+        Assertions.assertEquals("", capture.stderr());
+    }
+}
@@ -0,0 +1,211 @@
+package textprocessor;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+@Timeout(value = 1, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+public class MyOutputTest {
+    @TempDir
+    Path tempDirectory;
+
+    /*
+     * Test Utilities
+     */
+
+    private String lines(int count, String text) {
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            lines.append(text).append(i).append(System.lineSeparator());
+        }
+        return lines.toString();
+    }
+
+    /*
+     * Test Cases
+     */
+
+    @Test // everything written reaches the file, across many buffer refills
+    public void fileSinkWritesEverything() throws IOException {
+        Path file = Files.createFile(tempDirectory.resolve("output.txt"));
+        String expected = lines(50000, "line ");
+
+        try (OutputSink sink = BufferedSink.toFile(file, false)) {
+            for (int i = 0; i < 50000; i++) {
+                sink.writeLine("line " + i);
+            }
+        }
+        Assertions.assertEquals(expected, Files.readString(file, Charset.defaultCharset()));
+    }
+
+    @Test // text longer than the buffer is written in one piece
+    public void streamSinkWritesLongText() throws IOException {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        String text = "x".repeat(3 * BufferedSink.BUFFER_SIZE + 17) + System.lineSeparator();
+
+        try (OutputSink sink = BufferedSink.toStream(stream, false)) {
+            sink.write(text);
+        }
+        Assertions.assertEquals(text, stream.toString(Charset.defaultCharset()));
+    }
+
+    @Test // a line-buffered sink does not hold lines back
+    public void lineBufferedSinkFlushesEveryLine() throws IOException {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+
+        try (OutputSink sink = BufferedSink.toStream(stream, true)) {
+            sink.writeLine("first");
+            Assertions.assertEquals("first" + System.lineSeparator(), stream.toString(Charset.defaultCharset()));
+        }
+    }
+
+    @Test // a batching sink holds lines until it is flushed
+    public void batchingSinkFlushesOnClose() throws IOException {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+
+        OutputSink sink = BufferedSink.toStream(stream, false);
+        sink.writeLine("first");
+        Assertions.assertEquals(0, stream.size());
+        sink.close();
+        Assertions.assertEquals("first" + System.lineSeparator(), stream.toString(Charset.defaultCharset()));
+    }
+
+    @Test // raw bytes and lines come out in the order they were written
+    public void fileSinkKeepsBytesAndLinesInOrder() throws IOException {
+        Path file = Files.createFile(tempDirectory.resolve("output.txt"));
+        ByteBuffer source = ByteBuffer.wrap("abcdef".getBytes(Charset.defaultCharset()));
+        StringBuilder expected = new StringBuilder();
+
+        try (OutputSink sink = BufferedSink.toFile(file, false)) {
+            for (int i = 0; i < 3 * BufferedSink.GATHER_SIZE; i++) {
+                // slices that follow each other are joined, the others are gathered
+                sink.writeBytes(source, 0, 2);
+                sink.writeBytes(source, 2, 2);
+                sink.writeBytes(source, 5, 1);
+                expected.append("abcdf");
+                if (i % 100 == 0) {
+                    sink.writeLine("line " + i);
+                    expected.append("line ").append(i).append(System.lineSeparator());
+                }
+            }
+        }
+        Assertions.assertEquals(expected.toString(), Files.readString(file, Charset.defaultCharset()));
+    }
+
+    @Test // a slice following the previous one is not joined to it over bytes or text written in between
+    public void fileSinkKeepsCopiedBytesBetweenSlices() throws IOException {
+        Path file = Files.createFile(tempDirectory.resolve("output.txt"));
+        ByteBuffer source = ByteBuffer.wrap("abcdef".getBytes(Charset.defaultCharset()));
+        byte[] copied = "X".getBytes(Charset.defaultCharset());
+
+        try (OutputSink sink = BufferedSink.toFile(file, false)) {
+            sink.writeBytes(source, 0, 2);
+            sink.copyBytes(copied, 0, copied.length);
+            sink.writeBytes(source, 2, 2);
+            sink.write("Y");
+            sink.writeBytes(source, 4, 2);
+        }
+        Assertions.assertEquals("abXcdYef", Files.readString(file, Charset.defaultCharset()));
+    }
+
+    @Test // the copy of the output is what reaches the file, unless it grows past its limit
+    public void fileSinkKeepsCopyOfOutput() throws IOException {
+        Path file = Files.createFile(tempDirectory.resolve("output.txt"));
+        ByteBuffer source = ByteBuffer.wrap("abcdef".getBytes(Charset.defaultCharset()));
+        byte[] copied = "X".getBytes(Charset.defaultCharset());
+
+        BufferedSink sink = BufferedSink.toFile(file, false);
+        sink.keepCopy(Long.MAX_VALUE);
+        for (int i = 0; i < 2 * BufferedSink.GATHER_SIZE; i++) {
+            sink.writeBytes(source, 0, 2);
+            sink.copyBytes(copied, 0, copied.length);
+            sink.writeLine("line " + i);
+        }
+        sink.close();
+        Assertions.assertArrayEquals(Files.readAllBytes(file), sink.copy());
+
+        Path tooLarge = Files.createFile(tempDirectory.resolve("large.txt"));
+        BufferedSink limited = BufferedSink.toFile(tooLarge, false);
+        limited.keepCopy(10);
+        limited.writeLine("more than ten bytes");
+        limited.close();
+        Assertions.assertNull(limited.copy());
+    }
+
+    @Test // raw bytes are copied into the buffer for a stream
+    public void streamSinkCopiesBytes() throws IOException {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        String text = "y".repeat(2 * BufferedSink.BUFFER_SIZE + 5);
+        ByteBuffer source = ByteBuffer.wrap(text.getBytes(Charset.defaultCharset()));
+
+        try (OutputSink sink = BufferedSink.toStream(stream, false)) {
+            sink.write("start ");
+            sink.writeBytes(source, 0, source.capacity());
+            sink.writeLine(" end");
+        }
+        Assertions.assertEquals("start " + text + " end" + System.lineSeparator(),
+                stream.toString(Charset.defaultCharset()));
+    }
+
+    @Test // part of a file is copied between the lines around it
+    public void fileSinkTransfersFromChannel() throws IOException {
+        Path input = Files.writeString(tempDirectory.resolve("input.txt"), lines(1000, "copied "),
+                Charset.defaultCharset());
+        Path file = Files.createFile(tempDirectory.resolve("output.txt"));
+
+        try (FileChannel channel = FileChannel.open(input);
+             OutputSink sink = BufferedSink.toFile(file, false)) {
+            sink.writeLine("before");
+            sink.transferFrom(channel, 0, channel.size());
+            sink.writeLine("after");
+        }
+        Assertions.assertEquals("before" + System.lineSeparator() + lines(1000, "copied ")
+                        + "after" + System.lineSeparator(),
+                Files.readString(file, Charset.defaultCharset()));
+    }
+
+    @Test // numbers are zero-padded in the buffer, and long line numbers are not cut
+    public void sinkWritesPaddedNumbers() throws IOException {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+
+        try (OutputSink sink = BufferedSink.toStream(stream, false)) {
+            sink.writePadded(7, 3);
+            sink.write(" ");
+            sink.writePadded(12345, 3);
+            sink.write(" ");
+            sink.writePadded(3_000_000_000L, 1);
+            sink.write(" ");
+            sink.writePadded(Long.MAX_VALUE, LineTemplate.MAX_PADDING);
+            sink.write(" ");
+            sink.writePadded(0, LineTemplate.MAX_PADDING);
+        }
+        Assertions.assertEquals("007 12345 3000000000 " + Long.MAX_VALUE + " " + "0".repeat(19),
+                stream.toString(Charset.defaultCharset()));
+    }
+
+    @Test // a template lays out lines the same way in a sink and in a String
+    public void templateWritesWhatItAppends() throws IOException {
+        LineTemplate template = new LineTemplate(4, "!");
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        StringBuilder expected = new StringBuilder();
+
+        try (OutputSink sink = BufferedSink.toStream(stream, false)) {
+            for (long lineNumber : new long[] {1, 99, 12345, 1L << 40}) {
+                template.writeLine(sink, "line", lineNumber);
+                template.appendTo(expected, "line", lineNumber);
+                expected.append(System.lineSeparator());
+            }
+        }
+        Assertions.assertEquals("0001 line!", template.apply("line", 1));
+        Assertions.assertEquals(expected.toString(), stream.toString(Charset.defaultCharset()));
+    }
+}
@@ -0,0 +1,278 @@
+package textprocessor;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+@Timeout(value = 60, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+public class MyScalingTest {
+    // far more than the output buffers hold; how the time grows is measured by ScalingBenchmark
+    private static final int STREAMED_LINES = 200000;
+    private static final String STREAMED_LINE = "same line";
+    private static final int THREADS = 8;
+    private static final int RUNS_PER_THREAD = 25;
+
+    @TempDir
+    Path tempDirectory;
+
+    @RegisterExtension
+    OutputCapture capture = new OutputCapture();
+
+    /*
+     * Test Utilities
+     */
+
+    private Path createFile(int lines, String fileName) throws IOException {
+        StringBuilder contents = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            contents.append("This is line ").append(i).append(" of the input file.").append(System.lineSeparator());
+        }
+
+        Path file = tempDirectory.resolve(fileName);
+        Files.write(file, contents.toString().getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    /*
+     * Generates the same line over and over as it is read, so the input is
+     * never held anywhere, and records how much output had been written
+     * when half of it had been read.
+     */
+    private static final class GeneratedInput extends InputStream {
+        private final byte[] line = (STREAMED_LINE + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+        private final TailOutput output;
+        private int lines;
+        private int offset;
+        long writtenAtHalf = -1;
+
+        GeneratedInput(TailOutput output) {
+            this.output = output;
+        }
+
+        @Override
+        public int read() {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0];
+        }
+
+        @Override
+        public int read(byte[] bytes, int start, int length) {
+            if (lines == STREAMED_LINES) {
+                return -1;
+            }
+            int count = Math.min(length, line.length - offset);
+            System.arraycopy(line, offset, bytes, start, count);
+            offset += count;
+            if (offset == line.length) {
+                offset = 0;
+                lines++;
+                if (lines == STREAMED_LINES / 2) {
+                    writtenAtHalf = output.bytes;
+                }
+            }
+            return count;
+        }
+    }
+
+    /*
+     * Counts the output, and keeps only its end.
+     */
+    private static final class TailOutput extends OutputStream {
+        private final byte[] tail = new byte[64];
+        long bytes;
+
+        @Override
+        public void write(int b) {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] data, int start, int length) {
+            int kept = Math.min(length, tail.length);
+            System.arraycopy(tail, kept, tail, 0, tail.length - kept);
+            System.arraycopy(data, start + length - kept, tail, tail.length - kept, kept);
+            bytes += length;
+        }
+
+        String lastLine() {
+            String end = new String(tail, StandardCharsets.UTF_8);
+            String withoutSeparator = end.substring(0, end.length() - System.lineSeparator().length());
+            return withoutSeparator.substring(withoutSeparator.lastIndexOf(System.lineSeparator().charAt(0)) + 1);
+        }
+    }
+
+    private void assertStreamed(GeneratedInput input, TailOutput output) {
+        // every line is numbered by a running counter, even when it is the same as all the others
+        String lastLine = String.format("%06d", STREAMED_LINES) + " same row";
+        Assertions.assertEquals(lastLine, output.lastLine());
+        Assertions.assertEquals((long) STREAMED_LINES * (lastLine + System.lineSeparator()).length(), output.bytes);
+        // the first lines were written long before the last ones were read
+        Assertions.assertTrue(input.writtenAtHalf > 0);
+    }
+
+    /*
+     * Test Cases
+     */
+
+    @Test // the library reads each line once and writes it before reading on, whatever the input size
+    public void libraryStreamsLines() throws Exception {
+        TailOutput output = new TailOutput();
+        GeneratedInput input = new GeneratedInput(output);
+
+        TextProcessor utility = new TextProcessor();
+        utility.setInput(input);
+        utility.setStandardOutput(output);
+        utility.setReplaceText("line", "row");
+        utility.setAddPaddedLineNumber(6);
+        Assertions.assertEquals(STREAMED_LINES, utility.textprocessorWithStats().getLinesRead());
+        assertStreamed(input, output);
+    }
+
+    @Test // the command line reads each line once and writes it before reading on, whatever the input size
+    public void mainStreamsLines() {
+        TailOutput output = new TailOutput();
+        GeneratedInput input = new GeneratedInput(output);
+        String[] args = {"-r", "line", "row", "-n", "6", "-"};
+
+        Main.run(args, tempDirectory, new Properties(), input, new PrintStream(output), System.err);
+        assertStreamed(input, output);
+        Assertions.assertTrue(capture.stderr().isEmpty());
+    }
+
+    @Test // processors on different threads do not share configuration or output
+    public void processorsRunConcurrently() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int thread = 0; thread < THREADS; thread++) {
+                int id = thread;
+                results.add(executor.submit(() -> {
+                    // every thread keeps and tags a different set of lines
+                    Path inputFile = createFile(2000, "input-" + id + ".txt");
+                    String expected = expectedOutput(2000, id);
+
+                    for (int run = 0; run < RUNS_PER_THREAD; run++) {
+                        Path outputFile = tempDirectory.resolve("output-" + id + "-" + run + ".txt");
+
+                        TextProcessorInterface utility = new TextProcessor();
+                        utility.setFilepath(inputFile.toString());
+                        utility.setOutputFile(outputFile.toString());
+                        utility.setKeepLines("line " + id);
+                        utility.setSuffixLines(" #" + id);
+                        utility.textprocessor();
+
+                        Assertions.assertEquals(expected,
+                                new String(Files.readAllBytes(outputFile), StandardCharsets.UTF_8));
+                        utility.reset();
+                    }
+                    return null;
+                }));
+            }
+
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private String expectedOutput(int lines, int id) {
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            String line = "This is line " + i + " of the input file.";
+            if (line.contains("line " + id)) {
+                expected.append(line).append(" #").append(id).append(System.lineSeparator());
+            }
+        }
+        return expected.toString();
+    }
+
+    @Test // a large file processed on several threads gives the same output as on one thread
+    public void parallelOutputMatchesSequential() throws Exception {
+        // larger than the size below which files are processed on one thread
+        Path inputFile = createFile(400000, "large.txt");
+        Path sequentialOutput = tempDirectory.resolve("sequential.txt");
+        Path parallelOutput = tempDirectory.resolve("parallel.txt");
+
+        for (int threads : new int[] {1, 4}) {
+            TextProcessor utility = new TextProcessor();
+            utility.setFilepath(inputFile.toString());
+            utility.setOutputFile((threads == 1 ? sequentialOutput : parallelOutput).toString());
+            utility.setThreads(threads);
+            utility.setKeepLines("7");
+            utility.setAddPaddedLineNumber(7);
+            utility.setSuffixLines(";");
+            utility.textprocessor();
+        }
+
+        Assertions.assertTrue(Files.size(inputFile) > ParallelProcessor.MIN_PARALLEL_SIZE);
+        Assertions.assertEquals(-1, Files.mismatch(sequentialOutput, parallelOutput));
+    }
+
+    @Test // the statistics of the chunks processed on several threads add up to those of one thread
+    public void parallelStatsMatchSequential() throws Exception {
+        Path inputFile = createFile(400000, "large.txt");
+        List<ProcessingStats> stats = new ArrayList<>();
+
+        for (int threads : new int[] {1, 4}) {
+            Path outputFile = tempDirectory.resolve("output" + threads + ".txt");
+            TextProcessor utility = new TextProcessor();
+            utility.setFilepath(inputFile.toString());
+            utility.setOutputFile(outputFile.toString());
+            utility.setThreads(threads);
+            utility.setReplaceText("7", "seven", TextProcessor.ALL_OCCURRENCES);
+            stats.add(utility.textprocessorWithStats());
+            Assertions.assertEquals(Files.size(outputFile), stats.get(stats.size() - 1).getBytesWritten());
+        }
+
+        ProcessingStats sequential = stats.get(0);
+        ProcessingStats parallel = stats.get(1);
+        Assertions.assertEquals(400000, parallel.getLinesRead());
+        Assertions.assertEquals(sequential.getLinesRead(), parallel.getLinesRead());
+        Assertions.assertEquals(sequential.getLinesKept(), parallel.getLinesKept());
+        Assertions.assertEquals(sequential.getReplacements(), parallel.getReplacements());
+        Assertions.assertTrue(parallel.getReplacements() > parallel.getLinesRead() / 10);
+        Assertions.assertEquals(sequential.getBytesWritten(), parallel.getBytesWritten());
+    }
+
+    @Test // chunks come back in order and number their lines from the right offset
+    public void parallelChunksKeepOrderAndLineNumbers() throws Exception {
+        Path inputFile = createFile(5000, "input.txt");
+
+        TextProcessor configuration = new TextProcessor();
+        configuration.setAddPaddedLineNumber(4);
+        ProcessingPlan plan = configuration.compilePlan();
+
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            expected.append(String.format("%04d", i + 1)).append(" This is line ").append(i)
+                    .append(" of the input file.").append(System.lineSeparator());
+        }
+
+        StringBuilder actual = new StringBuilder();
+        try (ParallelProcessor processor = new ParallelProcessor(inputFile, plan, 4, 100)) {
+            String chunk;
+            while ((chunk = processor.nextChunk()) != null) {
+                actual.append(chunk);
+            }
+        }
+        Assertions.assertEquals(expected.toString(), actual.toString());
+    }
+}
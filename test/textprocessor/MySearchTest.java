@@ -0,0 +1,195 @@
+package textprocessor;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+@Timeout(value = 1, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+public class MySearchTest {
+    /*
+     * Test Utilities
+     */
+
+    private String randomText(Random random, int length, String alphabet) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return text.toString();
+    }
+
+    /*
+     * Test Cases
+     */
+
+    @Test // the byte search finds the same first match as String.indexOf
+    public void byteSearcherMatchesIndexOf() {
+        Random random = new Random(6300);
+        for (int run = 0; run < 2000; run++) {
+            String haystack = randomText(random, random.nextInt(60), "abc\u00e9");
+            String needle = randomText(random, random.nextInt(4), "abc\u00e9");
+
+            byte[] haystackBytes = haystack.getBytes(StandardCharsets.UTF_8);
+            int index = new ByteSearcher(needle.getBytes(StandardCharsets.UTF_8))
+                    .indexOf(ByteBuffer.wrap(haystackBytes), 0, haystackBytes.length);
+
+            int expected = haystack.indexOf(needle);
+            int expectedBytes = expected < 0 ? -1
+                    : haystack.substring(0, expected).getBytes(StandardCharsets.UTF_8).length;
+            Assertions.assertEquals(expectedBytes, index, "'" + needle + "' in '" + haystack + "'");
+        }
+    }
+
+    @Test // the search stays within the given range
+    public void byteSearcherRespectsRange() {
+        ByteBuffer haystack = ByteBuffer.wrap("needle|hay|needle".getBytes(StandardCharsets.US_ASCII));
+        ByteSearcher searcher = new ByteSearcher("needle".getBytes(StandardCharsets.US_ASCII));
+
+        Assertions.assertEquals(0, searcher.indexOf(haystack, 0, 17));
+        Assertions.assertEquals(11, searcher.indexOf(haystack, 1, 17));
+        Assertions.assertEquals(-1, searcher.indexOf(haystack, 1, 16));
+    }
+
+    @Test // the case-insensitive matcher finds the same first match as regionMatches
+    public void caseInsensitiveMatcherMatchesRegionMatches() {
+        Random random = new Random(6300);
+        String alphabet = "aAbBeE\u00e9\u00c9\u0131I\u00df";
+        for (int run = 0; run < 2000; run++) {
+            String line = randomText(random, random.nextInt(40), alphabet);
+            String needle = randomText(random, random.nextInt(4), alphabet);
+
+            int expected = -1;
+            for (int i = 0; i + needle.length() <= line.length(); i++) {
+                if (line.regionMatches(true, i, needle, 0, needle.length())) {
+                    expected = i;
+                    break;
+                }
+            }
+            Assertions.assertEquals(expected, new CaseInsensitiveMatcher(needle).indexOf(line),
+                    "'" + needle + "' in '" + line + "'");
+        }
+    }
+
+    @Test // matching does not change with the default locale
+    public void caseInsensitiveMatcherIgnoresLocale() {
+        Locale original = Locale.getDefault();
+        try {
+            Locale.setDefault(new Locale("tr", "TR"));
+            Assertions.assertEquals(4, new CaseInsensitiveMatcher("title").indexOf("THE TITLE"));
+        } finally {
+            Locale.setDefault(original);
+        }
+    }
+
+    @Test // the automaton matches a line exactly when one of its substrings is found
+    public void ahoCorasickMatchesAnySubstring() {
+        Random random = new Random(6300);
+        for (boolean caseInsensitive : new boolean[] {false, true}) {
+            for (int run = 0; run < 500; run++) {
+                List<String> substrings = new ArrayList<>();
+                for (int i = 1 + random.nextInt(8); i > 0; i--) {
+                    substrings.add(randomText(random, 1 + random.nextInt(4), "abcAB\u00e9"));
+                }
+                String line = randomText(random, random.nextInt(30), "abcAB\u00e9\u00c9");
+
+                boolean expected = false;
+                for (String substring : substrings) {
+                    expected |= caseInsensitive
+                            ? new CaseInsensitiveMatcher(substring).indexOf(line) >= 0
+                            : line.contains(substring);
+                }
+                Assertions.assertEquals(expected, new AhoCorasick(substrings, caseInsensitive).matches(line),
+                        substrings + " in '" + line + "'");
+            }
+        }
+    }
+
+    @Test // an empty substring is found in every line
+    public void ahoCorasickMatchesEmptySubstring() {
+        Assertions.assertTrue(new AhoCorasick(List.of("xyz", ""), false).matches("abc"));
+        Assertions.assertFalse(new AhoCorasick(List.of(), false).matches("abc"));
+    }
+
+    @Test // the replacer takes both strings literally
+    public void literalReplacerIgnoresMetacharacters() {
+        LiteralReplacer replacer = new LiteralReplacer("a.c", "$1\\", false, 1);
+
+        Assertions.assertEquals("abc $1\\ a.c", replacer.replace("abc a.c a.c"));
+        Assertions.assertEquals("no match", replacer.replace("no match"));
+    }
+
+    @Test // the replacer replaces the first, the nth or every occurrence
+    public void literalReplacerChoosesOccurrences() {
+        String line = "one Two one TWO one";
+
+        Assertions.assertEquals("1 Two one TWO one", new LiteralReplacer("one", "1", false, 1).replace(line));
+        Assertions.assertEquals("one Two one TWO 1", new LiteralReplacer("one", "1", false, 3).replace(line));
+        Assertions.assertEquals(line, new LiteralReplacer("one", "1", false, 4).replace(line));
+        Assertions.assertEquals("1 Two 1 TWO 1", new LiteralReplacer("one", "1", false, LiteralReplacer.ALL).replace(line));
+        Assertions.assertEquals("one 2 one 2 one", new LiteralReplacer("two", "2", true, LiteralReplacer.ALL).replace(line));
+        Assertions.assertEquals("aa", new LiteralReplacer("aa", "a", false, LiteralReplacer.ALL).replace("aaaa"));
+        Assertions.assertEquals("xaxbx", new LiteralReplacer("", "x", false, LiteralReplacer.ALL).replace("ab"));
+    }
+
+    @Test // whitespace is removed exactly like replaceAll("\\s", ""), from Strings and from bytes
+    public void whitespaceStripperMatchesRegex() {
+        // one stripper, whose buffer is reused and grown by the longer lines
+        WhitespaceStripper stripper = new WhitespaceStripper();
+        Random random = new Random(1400);
+        String alphabet = "ab \t\n\u000B\f\r\u00a0\u2003\u00e9\u20ac";
+        byte[] target = new byte[256];
+        for (int run = 0; run < 2000; run++) {
+            String line = randomText(random, random.nextInt(40), alphabet);
+            String expected = line.replaceAll("\\s", "");
+            Assertions.assertEquals(expected, stripper.strip(line));
+
+            byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+            int count = WhitespaceStripper.strip(ByteBuffer.wrap(bytes), 0, bytes.length, target);
+            String stripped = count < 0 ? line : new String(target, 0, count, StandardCharsets.UTF_8);
+            Assertions.assertEquals(expected, stripped);
+        }
+    }
+
+    @Test // a line without whitespace is not copied
+    public void whitespaceStripperSkipsCleanLines() {
+        String line = "no-whitespace-here";
+
+        Assertions.assertSame(line, new WhitespaceStripper().strip(line));
+        Assertions.assertEquals(-1, WhitespaceStripper.strip(
+                ByteBuffer.wrap(line.getBytes(StandardCharsets.US_ASCII)), 0, line.length(), new byte[0]));
+    }
+
+    @Test // the vector kernels find the same bytes as the scalar ones, when the module is available
+    public void vectorKernelsMatchScalarKernels() {
+        ScanKernels vector = ScalarKernels.loadVectorKernels();
+        Assumptions.assumeTrue(vector != null, "jdk.incubator.vector is not available");
+        ScanKernels scalar = new ScalarKernels();
+
+        Random random = new Random(1500);
+        byte[] alphabet = {'a', 'b', ' ', '\t', '\n', '\r', 0x0B, (byte) 0x85, (byte) 0xC2, (byte) 0xE2, (byte) 0xFF};
+        for (int run = 0; run < 2000; run++) {
+            ByteBuffer buffer = run % 2 == 0 ? ByteBuffer.allocate(300) : ByteBuffer.allocateDirect(300);
+            // mostly plain bytes, so matches are often beyond the first vector
+            for (int i = 0; i < buffer.capacity(); i++) {
+                buffer.put(i, random.nextInt(40) == 0 ? alphabet[random.nextInt(alphabet.length)] : (byte) 'x');
+            }
+            int from = random.nextInt(100);
+            int to = from + random.nextInt(buffer.capacity() - from + 1);
+
+            Assertions.assertEquals(scalar.indexOfLineBreak(buffer, from, to, (byte) 0xC2, (byte) 0xE2),
+                    vector.indexOfLineBreak(buffer, from, to, (byte) 0xC2, (byte) 0xE2));
+            Assertions.assertEquals(scalar.indexOf(buffer, from, to, (byte) 0x85),
+                    vector.indexOf(buffer, from, to, (byte) 0x85));
+            Assertions.assertEquals(scalar.indexOfWhitespace(buffer, from, to),
+                    vector.indexOfWhitespace(buffer, from, to));
+        }
+    }
+}